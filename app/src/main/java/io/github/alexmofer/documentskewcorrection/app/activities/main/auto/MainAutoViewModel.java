@@ -2,12 +2,17 @@ package io.github.alexmofer.documentskewcorrection.app.activities.main.auto;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.CancellationException;
+
 import io.github.alexmofer.android.support.other.StringResource;
 import io.github.alexmofer.android.support.other.StringResourceException;
 import io.github.alexmofer.documentskewcorrection.app.activities.main.common.MainCommonViewModel;
@@ -25,6 +30,7 @@ public abstract class MainAutoViewModel extends MainCommonViewModel {
     private long mDetectStart;
     private long mDetectEnd;
     private long mCorrectStart;
+    private ListenableFuture<Uri> mTask;
 
     LiveData<StringResource> getInfo() {
         return mInfo;
@@ -50,28 +56,47 @@ public abstract class MainAutoViewModel extends MainCommonViewModel {
     protected final void handleImage(Context context, Uri uri) {
         mOriginal.setValue(uri);
         setProcessing(true);
-        ListenableFutureHelper.submit(() -> {
-            return handleImageInBackground(context, uri);
+        if (mTask != null) {
+            // 新图片取代旧图片，正在进行的检测或校正尽快停止
+            mTask.cancel(false);
+        }
+        mTask = ListenableFutureHelper.submit(signal -> {
+            return handleImageInBackground(context, uri, signal);
         }, result -> {
             setProcessing(false);
             mCorrected.setValue(result);
         }, t -> {
+            if (t instanceof CancellationException) {
+                // 已被取代或已销毁
+                return;
+            }
             setProcessing(false);
             mFailure.setValue(StringResourceException.getMessage(t));
         });
     }
 
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
+        }
+    }
+
     /**
      * 处理图片
      *
      * @param context Context
      * @param uri     图片Uri
+     * @param signal  取消信号，图片被取代或页面销毁时取消
      * @return 处理后的图片Uri
      * @throws Exception 失败信息
      */
     @WorkerThread
     @NonNull
-    protected abstract Uri handleImageInBackground(Context context, @NonNull Uri uri) throws Exception;
+    protected abstract Uri handleImageInBackground(Context context, @NonNull Uri uri,
+                                                   CancellationSignal signal) throws Exception;
 
     protected void notifyDetectStart() {
         mDetectStart = System.currentTimeMillis();
@@ -3,6 +3,7 @@ package io.github.alexmofer.documentskewcorrection.app.activities.main.core;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import androidx.annotation.NonNull;
 
@@ -16,6 +17,7 @@ import io.github.alexmofer.android.support.utils.ContextUtils;
 import io.github.alexmofer.documentskewcorrection.app.activities.main.auto.MainAutoViewModel;
 import io.github.alexmofer.documentskewcorrection.app.utils.FileProviderUtils;
 import io.github.alexmofer.documentskewcorrection.core.DocumentSkewCorrectionCore;
+import io.github.alexmofer.documentskewcorrection.core.DocumentSkewDetectionResult;
 
 /**
  * ViewModel
@@ -25,33 +27,37 @@ public class MainCoreViewModel extends MainAutoViewModel {
 
     @Override
     @NonNull
-    protected Uri handleImageInBackground(Context context, @NonNull Uri uri) throws Exception {
+    protected Uri handleImageInBackground(Context context, @NonNull Uri uri,
+                                          CancellationSignal signal) throws Exception {
         // 检测
         this.notifyDetectStart();
-        final float[] points = DocumentSkewCorrectionCore.detect(context, uri);
+        final DocumentSkewDetectionResult result =
+                DocumentSkewCorrectionCore.detectResult(context, uri, signal);
         this.notifyDetectEnd();
+        final float[] points = result == null ? null : result.getPoints();
         if (points == null) {
             throw new StringResourceException("检测不到文档边框，请选择其他图片");
         }
-        // 校正
+        // 校正并直接写入文件，不生成完整的校正位图
         this.notifyCorrectStart();
-        final Bitmap corrected = DocumentSkewCorrectionCore.correct(context, uri, points);
-        this.notifyCorrectEnd();
-        if (corrected == null) {
-            throw new StringResourceException("文档校正失败");
-        }
-        // 写入文件
         final File dir = ContextUtils.getExternalCacheDir(context, true);
         final File saved = new File(dir, "Corrected_" + UUID.randomUUID().toString());
+        final boolean corrected;
         //noinspection IOStreamConstructor
         try (final OutputStream output = new FileOutputStream(saved)) {
-            if (corrected.compress(Bitmap.CompressFormat.PNG, 100, output)) {
-                return FileProviderUtils.getUriForFile(context, saved);
-            } else {
-                throw new StringResourceException("保存到文件失败");
-            }
-        } finally {
-            corrected.recycle();
+            corrected = DocumentSkewCorrectionCore.correctTo(context, uri, points,
+                    output, Bitmap.CompressFormat.PNG, 100, signal);
+        } catch (Exception e) {
+            //noinspection ResultOfMethodCallIgnored
+            saved.delete();
+            throw e;
+        }
+        this.notifyCorrectEnd();
+        if (!corrected) {
+            //noinspection ResultOfMethodCallIgnored
+            saved.delete();
+            throw new StringResourceException("文档校正失败");
         }
+        return FileProviderUtils.getUriForFile(context, saved);
     }
 }
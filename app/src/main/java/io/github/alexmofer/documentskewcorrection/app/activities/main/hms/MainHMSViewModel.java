@@ -3,6 +3,7 @@ package io.github.alexmofer.documentskewcorrection.app.activities.main.hms;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import androidx.annotation.NonNull;
 
@@ -24,7 +25,8 @@ import io.github.alexmofer.documentskewcorrection.hms.DocumentSkewCorrectionHMS;
 public class MainHMSViewModel extends MainAutoViewModel {
     @Override
     @NonNull
-    protected Uri handleImageInBackground(Context context, @NonNull Uri uri) throws Exception {
+    protected Uri handleImageInBackground(Context context, @NonNull Uri uri,
+                                          CancellationSignal signal) throws Exception {
         // 可用性检查
         if (!DocumentSkewCorrectionHMS.isEnable(context)) {
             // 设备不支持
@@ -37,6 +39,8 @@ public class MainHMSViewModel extends MainAutoViewModel {
         if (points == null) {
             throw new StringResourceException("检测不到文档边框，请选择其他图片");
         }
+        // 模块不支持中途取消，只在检测与校正之间检查
+        signal.throwIfCanceled();
         // 校正
         this.notifyCorrectStart();
         final Bitmap corrected = DocumentSkewCorrectionHMS.correct(context, uri, points);
@@ -3,6 +3,7 @@ package io.github.alexmofer.documentskewcorrection.app.activities.main.tensorflo
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import androidx.annotation.NonNull;
 
@@ -25,7 +26,8 @@ public class MainTensorflowViewModel extends MainAutoViewModel {
 
     @Override
     @NonNull
-    protected Uri handleImageInBackground(Context context, @NonNull Uri uri) throws Exception {
+    protected Uri handleImageInBackground(Context context, @NonNull Uri uri,
+                                          CancellationSignal signal) throws Exception {
         // 检测
         this.notifyDetectStart();
         final float[] points = DocumentSkewCorrectionTensorflow.detect(context, uri);
@@ -33,6 +35,8 @@ public class MainTensorflowViewModel extends MainAutoViewModel {
         if (points == null) {
             throw new StringResourceException("检测不到文档边框，请选择其他图片");
         }
+        // 模块不支持中途取消，只在检测与校正之间检查
+        signal.throwIfCanceled();
         // 校正
         this.notifyCorrectStart();
         final Bitmap corrected = DocumentSkewCorrectionTensorflow.correct(context, uri, points);
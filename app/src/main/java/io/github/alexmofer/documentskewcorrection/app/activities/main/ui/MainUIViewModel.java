@@ -7,10 +7,13 @@ import android.net.Uri;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 
 import io.github.alexmofer.android.support.other.StringResource;
 import io.github.alexmofer.android.support.other.StringResourceException;
@@ -19,6 +22,7 @@ import io.github.alexmofer.documentskewcorrection.app.activities.main.common.Mai
 import io.github.alexmofer.documentskewcorrection.app.concurrent.ListenableFutureHelper;
 import io.github.alexmofer.documentskewcorrection.app.utils.FileProviderUtils;
 import io.github.alexmofer.documentskewcorrection.core.DocumentSkewCorrectionCore;
+import io.github.alexmofer.documentskewcorrection.core.DocumentSkewDetectionResult;
 
 /**
  * ViewModel
@@ -29,6 +33,7 @@ public class MainUIViewModel extends MainCommonViewModel {
     private final MutableLiveData<float[]> mPoints = new MutableLiveData<>();
     private final MutableLiveData<Uri> mCorrected = new MutableLiveData<>();
     private final MutableLiveData<StringResource> mFailure = new MutableLiveData<>();
+    private ListenableFuture<?> mTask;
 
     LiveData<Uri> getOriginal() {
         return mOriginal;
@@ -59,19 +64,18 @@ public class MainUIViewModel extends MainCommonViewModel {
         mOriginal.setValue(uri);
         mPoints.setValue(null);
         setProcessing(true);
-        ListenableFutureHelper.submit(() -> {
-            final float[] points = DocumentSkewCorrectionCore.detect(context, uri);
-            if (points == null) {
+        cancelTask();
+        mTask = ListenableFutureHelper.submit(signal -> {
+            final DocumentSkewDetectionResult result =
+                    DocumentSkewCorrectionCore.detectResult(context, uri, signal);
+            if (result == null) {
                 throw new StringResourceException("检测不到文档边框，请选择其他图片");
             }
-            return points;
+            return result.getPoints();
         }, result -> {
             setProcessing(false);
             mPoints.setValue(result);
-        }, t -> {
-            setProcessing(false);
-            mFailure.setValue(StringResourceException.getMessage(t));
-        });
+        }, this::onFailure);
     }
 
     void correct(Context context, float[] points) {
@@ -86,30 +90,55 @@ public class MainUIViewModel extends MainCommonViewModel {
         }
         setProcessing(true);
         mCorrected.setValue(null);
-        ListenableFutureHelper.submit(() -> {
-            final Bitmap corrected = DocumentSkewCorrectionCore.correct(context, uri, points);
-            if (corrected == null) {
-                throw new StringResourceException("文档校正失败");
-            }
-            // 写入文件
+        cancelTask();
+        mTask = ListenableFutureHelper.submit(signal -> {
+            // 校正并直接写入文件，不生成完整的校正位图
             final File dir = ContextUtils.getExternalCacheDir(context, true);
             final File saved = new File(dir, "Corrected_" + UUID.randomUUID().toString());
+            final boolean corrected;
             //noinspection IOStreamConstructor
             try (final OutputStream output = new FileOutputStream(saved)) {
-                if (corrected.compress(Bitmap.CompressFormat.PNG, 100, output)) {
-                    return FileProviderUtils.getUriForFile(context, saved);
-                } else {
-                    throw new StringResourceException("保存到文件失败");
-                }
-            } finally {
-                corrected.recycle();
+                corrected = DocumentSkewCorrectionCore.correctTo(context, uri, points,
+                        output, Bitmap.CompressFormat.PNG, 100, signal);
+            } catch (Exception e) {
+                //noinspection ResultOfMethodCallIgnored
+                saved.delete();
+                throw e;
             }
+            if (!corrected) {
+                //noinspection ResultOfMethodCallIgnored
+                saved.delete();
+                throw new StringResourceException("文档校正失败");
+            }
+            return FileProviderUtils.getUriForFile(context, saved);
         }, result -> {
             setProcessing(false);
             mCorrected.setValue(result);
-        }, t -> {
-            setProcessing(false);
-            mFailure.setValue(StringResourceException.getMessage(t));
-        });
+        }, this::onFailure);
+    }
+
+    private void onFailure(Throwable t) {
+        if (t instanceof CancellationException) {
+            // 已被取代或已销毁
+            return;
+        }
+        setProcessing(false);
+        mFailure.setValue(StringResourceException.getMessage(t));
+    }
+
+    /**
+     * 取消正在进行的检测或校正，使其尽快停止并释放内存
+     */
+    private void cancelTask() {
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        cancelTask();
     }
 }
@@ -1,5 +1,7 @@
 package io.github.alexmofer.documentskewcorrection.app.concurrent;
 
+import android.os.CancellationSignal;
+
 import androidx.annotation.Nullable;
 
 import com.google.common.util.concurrent.FutureCallback;
@@ -72,4 +74,37 @@ public class ListenableFutureHelper {
                 getUIThreadExecutor());
         return future;
     }
+
+    /**
+     * 提交可取消的异步任务
+     * 异步任务被取消时同时触发任务的取消信号，使正在进行的检测或校正尽快停止并释放内存。
+     *
+     * @param task    任务执行回调
+     * @param success 任务成功回调
+     * @param failure 任务失败回调
+     * @param <T>     返回类型
+     * @return 异步任务
+     * @noinspection UnusedReturnValue
+     */
+    public static <T> ListenableFuture<T> submit(CancellableCallable<T> task, Consumer<T> success,
+                                                 @Nullable Consumer<Throwable> failure) {
+        final CancellationSignal signal = new CancellationSignal();
+        final ListenableFuture<T> future = submit(() -> task.call(signal), success, failure);
+        future.addListener(() -> {
+            if (future.isCancelled()) {
+                signal.cancel();
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    /**
+     * 可取消的任务
+     *
+     * @param <T> 返回类型
+     */
+    @FunctionalInterface
+    public interface CancellableCallable<T> {
+        T call(CancellationSignal signal) throws Exception;
+    }
 }
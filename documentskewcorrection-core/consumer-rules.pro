@@ -7,6 +7,12 @@
 -keep class io.github.alexmofer.documentskewcorrection.core.DocumentSkewDetectorDelegated {
     *;
 }
+-keep class io.github.alexmofer.documentskewcorrection.core.DocumentSkewDetectorLines {
+    *;
+}
 -keep class io.github.alexmofer.documentskewcorrection.core.DocumentSkewCorrector {
     *;
+}
+-keep class io.github.alexmofer.documentskewcorrection.core.DocumentSkewBandedCorrector {
+    *;
 }
\ No newline at end of file
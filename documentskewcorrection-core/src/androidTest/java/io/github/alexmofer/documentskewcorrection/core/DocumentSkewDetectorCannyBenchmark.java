@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.core;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Canny 检测器各阶段耗时基准
+ * 以不含文档的纹理图检测，全部任务都会执行且失败，即最慢的情况。
+ * 单线程检测，从原生层的任务记录中取每个任务自身的耗时（首个用到某种高斯模糊的任务含该模糊的耗时，
+ * 之后的任务复用），其余为直方图均衡化等任务之外的耗时。
+ * 运行：./gradlew :documentskewcorrection-core:connectedAndroidTest，结果见 adb logcat -s DocumentSkewBenchmark。
+ * Created by Alex on 2025/6/18.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DocumentSkewDetectorCannyBenchmark {
+
+    private static final String TAG = "DocumentSkewBenchmark";
+    private static final int SIZE = 500;// 与检测器默认最大尺寸一致，不再缩小
+    private static final int WARMUP = 3;
+    private static final int RUNS = 20;
+
+    /**
+     * 生成不含文档的纹理图
+     * 4×4 像素块的随机灰度，边缘遍布全图但不构成四边形。
+     */
+    private static Bitmap createTexture() {
+        final Random random = new Random(20250618);
+        final int[] pixels = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y += 4) {
+            for (int x = 0; x < SIZE; x += 4) {
+                final int gray = random.nextInt(256);
+                final int color = 0xff000000 | gray << 16 | gray << 8 | gray;
+                for (int dy = 0; dy < 4; dy++) {
+                    for (int dx = 0; dx < 4; dx++) {
+                        pixels[(y + dy) * SIZE + x + dx] = color;
+                    }
+                }
+            }
+        }
+        return Bitmap.createBitmap(pixels, SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    private static long detect(Bitmap image, DocumentSkewDetectorCannyStatistics statistics)
+            throws Exception {
+        final DocumentSkewDetectorCanny detector = new DocumentSkewDetectorCanny.Builder()
+                .setImage(image, false)
+                .setStatistics(statistics)
+                .build();
+        try {
+            final long start = System.nanoTime();
+            final DocumentSkewDetectionResult result = detector.detectResult();
+            final long elapsed = System.nanoTime() - start;
+            assertNull("Texture must not contain a document.", result);
+            return elapsed;
+        } finally {
+            detector.release();
+        }
+    }
+
+    @Test
+    public void detect_allTasksFail() throws Exception {
+        final Bitmap image = createTexture();
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                detect(image, new DocumentSkewDetectorCannyStatistics());
+            }
+            final DocumentSkewDetectorCannyStatistics statistics =
+                    new DocumentSkewDetectorCannyStatistics();
+            long total = 0;
+            for (int i = 0; i < RUNS; i++) {
+                total += detect(image, statistics);
+            }
+            long tasks = 0;
+            for (int task = 0; task < DocumentSkewDetectorCanny.TASK_COUNT; task++) {
+                assertEquals(RUNS, statistics.getAttemptCount(task));
+                assertEquals(0, statistics.getSuccessCount(task));
+                final long elapsed = statistics.getAverageElapsedTime(task);
+                tasks += elapsed;
+                Log.i(TAG, String.format(Locale.US,
+                        "task %2d blur %2d canny %3d %-8s %8.3f ms", task,
+                        DocumentSkewDetectorCanny.getBlurSize(task),
+                        DocumentSkewDetectorCanny.getCannyThreshold(task),
+                        DocumentSkewDetectorCanny.isEnhanced(task) ? "enhanced" : "original",
+                        elapsed / 1e6));
+            }
+            final long average = total / RUNS;
+            Log.i(TAG, String.format(Locale.US, "tasks %8.3f ms", tasks / 1e6));
+            Log.i(TAG, String.format(Locale.US, "other %8.3f ms", (average - tasks) / 1e6));
+            Log.i(TAG, String.format(Locale.US, "total %8.3f ms (%d runs, %dx%d)",
+                    average / 1e6, RUNS, SIZE, SIZE));
+        } finally {
+            image.recycle();
+        }
+    }
+}
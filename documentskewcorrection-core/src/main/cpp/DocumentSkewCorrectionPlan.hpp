@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+// 校正方案（定点重映射表）及其缓存
+// Created by Alex on 2025/6/14.
+//
+
+#ifndef DOCUMENTSKEWCORRECTION_DOCUMENTSKEWCORRECTIONPLAN_HPP
+#define DOCUMENTSKEWCORRECTION_DOCUMENTSKEWCORRECTIONPLAN_HPP
+
+#include <algorithm>
+#include <array>
+#include <cmath>
+#include <cstdlib>
+#include <list>
+#include <memory>
+#include <mutex>
+#include <vector>
+#include <opencv2/core/mat.hpp>
+#include <opencv2/imgproc.hpp>
+
+namespace DR {
+
+    /**
+     * 校正方案
+     * 输出图每个像素在原图中的定点坐标（CV_16SC2 与插值表），校正即为一次重映射。
+     * 以量化后的边框、原图尺寸与输出尺寸为键，边框量化到 1/32 像素，并以量化后的边框计算。
+     * 缓存查找时边框允许有吸附容差，命中的是容差内最接近的方案，输出以该方案的边框为准。
+     */
+    class DocumentSkewCorrectionPlan {
+
+    public:
+        // 边框量化精度，1/32 像素
+        static const int QUAD_PRECISION = 32;
+
+        struct Key {
+            std::array<int, 8> quad;
+            int sourceWidth;
+            int sourceHeight;
+            int width;
+            int height;
+
+            bool operator==(const Key &other) const {
+                return quad == other.quad && sourceWidth == other.sourceWidth
+                       && sourceHeight == other.sourceHeight
+                       && width == other.width && height == other.height;
+            }
+
+            /**
+             * 计算与另一个键的边框偏差
+             * @param other 另一个键
+             * @return 尺寸相同时返回边框各坐标差的最大值（1/32 像素），否则返回-1
+             */
+            int distance(const Key &other) const {
+                if (sourceWidth != other.sourceWidth || sourceHeight != other.sourceHeight
+                    || width != other.width || height != other.height) {
+                    return -1;
+                }
+                int max = 0;
+                for (size_t i = 0; i < quad.size(); i++) {
+                    max = std::max(max, std::abs(quad[i] - other.quad[i]));
+                }
+                return max;
+            }
+        };
+
+        /**
+         * 生成键
+         * @param srcRect 边框四个点（左上、右上、左下、右下）
+         * @param sourceWidth 原图宽
+         * @param sourceHeight 原图高
+         * @param width 输出图宽
+         * @param height 输出图高
+         * @return 键
+         */
+        static Key toKey(const std::vector<cv::Point2f> &srcRect, int sourceWidth,
+                         int sourceHeight, int width, int height) {
+            Key key{};
+            for (int i = 0; i < 4; i++) {
+                key.quad[i * 2] = (int) std::lround(srcRect[i].x * QUAD_PRECISION);
+                key.quad[i * 2 + 1] = (int) std::lround(srcRect[i].y * QUAD_PRECISION);
+            }
+            key.sourceWidth = sourceWidth;
+            key.sourceHeight = sourceHeight;
+            key.width = width;
+            key.height = height;
+            return key;
+        }
+
+        /**
+         * 构造
+         * 只分配映射表，各块映射表由 build 计算后以 store 填入，全部块填入后方可缓存。
+         * @param key 键
+         * @param matrix 原图到输出图的透视变换矩阵
+         * @param interpolation 插值方式
+         */
+        DocumentSkewCorrectionPlan(const Key &key, const cv::Mat &matrix, int interpolation)
+                : mKey(key), mInterpolation(interpolation) {
+            cv::invert(matrix, mInverse);
+            mMap.create(key.height, key.width, CV_16SC2);
+            mTable.create(key.height, key.width, CV_16UC1);
+        }
+
+        /**
+         * 还原量化后的边框
+         * @param key 键
+         * @return 边框四个点（左上、右上、左下、右下）
+         */
+        static std::vector<cv::Point2f> toRect(const Key &key) {
+            std::vector<cv::Point2f> srcRect;
+            for (int i = 0; i < 4; i++) {
+                srcRect.emplace_back((float) key.quad[i * 2] / QUAD_PRECISION,
+                                     (float) key.quad[i * 2 + 1] / QUAD_PRECISION);
+            }
+            return srcRect;
+        }
+
+        const Key &getKey() const {
+            return mKey;
+        }
+
+        /**
+         * 获取占用内存
+         * @return 映射表的字节数
+         */
+        size_t getSize() const {
+            return mMap.total() * mMap.elemSize() + mTable.total() * mTable.elemSize();
+        }
+
+        /**
+         * 获取占用内存
+         * 用于在分配映射表之前判断能否缓存。
+         * @param width 输出图宽
+         * @param height 输出图高
+         * @return 映射表的字节数
+         */
+        static size_t getSize(int width, int height) {
+            return (size_t) width * height * (CV_ELEM_SIZE(CV_16SC2) + CV_ELEM_SIZE(CV_16UC1));
+        }
+
+        /**
+         * 计算一块映射表
+         * 与 warpPerspective 相同，以双精度计算每个输出像素在原图中的坐标，再转为定点。
+         * 计算结果只与区域有关，可用于任意区域（含超出块的外扩区域），与填入方案后再取出的一致。
+         * @param rect 输出图中的区域
+         * @param map 待输出的定点坐标
+         * @param table 待输出的插值表
+         */
+        void build(const cv::Rect &rect, cv::Mat &map, cv::Mat &table) const {
+            cv::Mat mapX(rect.size(), CV_32FC1);
+            cv::Mat mapY(rect.size(), CV_32FC1);
+            const auto *m = mInverse.ptr<double>();
+            for (int y = 0; y < rect.height; y++) {
+                auto *xs = mapX.ptr<float>(y);
+                auto *ys = mapY.ptr<float>(y);
+                const double dy = rect.y + y;
+                for (int x = 0; x < rect.width; x++) {
+                    const double dx = rect.x + x;
+                    double w = m[6] * dx + m[7] * dy + m[8];
+                    w = w != 0 ? 1. / w : 0;
+                    xs[x] = (float) ((m[0] * dx + m[1] * dy + m[2]) * w);
+                    ys[x] = (float) ((m[3] * dx + m[4] * dy + m[5]) * w);
+                }
+            }
+            cv::convertMaps(mapX, mapY, map, table, CV_16SC2);
+        }
+
+        /**
+         * 填入一块映射表
+         * 各块互不重叠，可由多个线程同时填入。
+         * @param tile 输出图中的块
+         * @param map 该块的定点坐标
+         * @param table 该块的插值表
+         */
+        void store(const cv::Rect &tile, const cv::Mat &map, const cv::Mat &table) {
+            cv::Mat dstMap = mMap(tile);
+            cv::Mat dstTable = mTable(tile);
+            map.copyTo(dstMap);
+            table.copyTo(dstTable);
+        }
+
+        /**
+         * 重映射一块
+         * @param image 原图
+         * @param out 输出，尺寸为块的尺寸
+         * @param tile 输出图中的块
+         */
+        void remap(const cv::Mat &image, cv::Mat &out, const cv::Rect &tile) const {
+            cv::remap(image, out, mMap(tile), mTable(tile), mInterpolation);
+        }
+
+        /**
+         * 以计算出的映射表重映射
+         * @param image 原图
+         * @param out 输出，尺寸为映射表的尺寸
+         * @param map 定点坐标
+         * @param table 插值表
+         */
+        void remap(const cv::Mat &image, cv::Mat &out, const cv::Mat &map,
+                   const cv::Mat &table) const {
+            cv::remap(image, out, map, table, mInterpolation);
+        }
+
+    private:
+        const Key mKey;
+        const int mInterpolation;
+        cv::Mat mInverse;
+        cv::Mat mMap;
+        cv::Mat mTable;
+    };
+
+    /**
+     * 校正方案缓存
+     * 进程内共享，按最近最少使用淘汰，总占用不超过设定的字节数，默认不缓存。
+     */
+    class DocumentSkewCorrectionPlanCache {
+
+    public:
+        static DocumentSkewCorrectionPlanCache &getInstance() {
+            static DocumentSkewCorrectionPlanCache instance;
+            return instance;
+        }
+
+        /**
+         * 设置缓存大小
+         * @param capacity 缓存字节数，为 0 时关闭并清空缓存
+         * @param tolerance 边框吸附容差（像素），边框各坐标与缓存方案相差均不超过该值时复用缓存方案
+         */
+        void setCapacity(size_t capacity, float tolerance) {
+            std::lock_guard<std::mutex> lock(mMutex);
+            mCapacity = capacity;
+            mTolerance = tolerance > 0 ?
+                         (int) std::lround(tolerance * DocumentSkewCorrectionPlan::QUAD_PRECISION)
+                                       : 0;
+            trim();
+        }
+
+        /**
+         * 判断能否缓存
+         * @param size 方案的字节数
+         * @return 不超过缓存大小时返回true
+         */
+        bool canHold(size_t size) {
+            std::lock_guard<std::mutex> lock(mMutex);
+            return size > 0 && size <= mCapacity;
+        }
+
+        /**
+         * 获取方案
+         * 原图尺寸与输出尺寸须相同，边框各坐标相差均不超过吸附容差，有多个时取边框最接近的。
+         * @param key 键
+         * @return 命中时返回方案并移到最近使用，否则返回空
+         */
+        std::shared_ptr<const DocumentSkewCorrectionPlan> get(
+                const DocumentSkewCorrectionPlan::Key &key) {
+            std::lock_guard<std::mutex> lock(mMutex);
+            auto found = mPlans.end();
+            int min = mTolerance;
+            for (auto it = mPlans.begin(); it != mPlans.end(); ++it) {
+                const int distance = (*it)->getKey().distance(key);
+                if (distance >= 0 && distance <= min) {
+                    found = it;
+                    min = distance;
+                    if (distance == 0) {
+                        break;
+                    }
+                }
+            }
+            if (found == mPlans.end()) {
+                return nullptr;
+            }
+            mPlans.splice(mPlans.begin(), mPlans, found);
+            return mPlans.front();
+        }
+
+        /**
+         * 放入方案
+         * 超出缓存大小的方案不缓存；同键的旧方案被替换。
+         * @param plan 已全部填充的方案
+         */
+        void put(const std::shared_ptr<const DocumentSkewCorrectionPlan> &plan) {
+            std::lock_guard<std::mutex> lock(mMutex);
+            if (plan->getSize() > mCapacity) {
+                return;
+            }
+            for (auto it = mPlans.begin(); it != mPlans.end(); ++it) {
+                if ((*it)->getKey() == plan->getKey()) {
+                    mSize -= (*it)->getSize();
+                    mPlans.erase(it);
+                    break;
+                }
+            }
+            mPlans.push_front(plan);
+            mSize += plan->getSize();
+            trim();
+        }
+
+    private:
+        std::mutex mMutex;
+        // 正在使用的方案由使用方持有，淘汰后在使用结束时释放
+        std::list<std::shared_ptr<const DocumentSkewCorrectionPlan>> mPlans;
+        size_t mCapacity = 0;
+        size_t mSize = 0;
+        // 边框吸附容差，1/32 像素
+        int mTolerance = 0;
+
+        DocumentSkewCorrectionPlanCache() = default;
+
+        void trim() {
+            while (mSize > mCapacity && !mPlans.empty()) {
+                mSize -= mPlans.back()->getSize();
+                mPlans.pop_back();
+            }
+        }
+    };
+}
+
+#endif //DOCUMENTSKEWCORRECTION_DOCUMENTSKEWCORRECTIONPLAN_HPP
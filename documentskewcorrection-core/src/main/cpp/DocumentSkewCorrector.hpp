@@ -20,6 +20,11 @@
 #ifndef DOCUMENTSKEWCORRECTION_DOCUMENTSKEWCORRECTOR_HPP
 #define DOCUMENTSKEWCORRECTION_DOCUMENTSKEWCORRECTOR_HPP
 
+#include <atomic>
+#include <cmath>
+#include <thread>
+#include "DocumentSkewCorrectionPlan.hpp"
+#include "PngWriter.hpp"
 #include <opencv2/core/mat.hpp>
 #include <opencv2/imgproc.hpp>
 
@@ -28,7 +33,22 @@ namespace DR {
     class DocumentSkewCorrector {
 
     public:
-        DocumentSkewCorrector(int width, int height, void *pixels) {
+        // 输出模式：RGBA 彩色
+        static const int OUTPUT_RGBA = 0;
+        // 输出模式：8 位灰度
+        static const int OUTPUT_GRAY = 1;
+        // 输出模式：自适应阈值二值化，0 或 255
+        static const int OUTPUT_BINARY = 2;
+
+        /**
+         * 构造
+         * @param width 原图宽
+         * @param height 原图高
+         * @param pixels 像素点
+         * @param threads 校正线程数
+         */
+        DocumentSkewCorrector(int width, int height, void *pixels, int threads)
+                : mThreads(threads < 1 ? 1 : threads) {
             mImage = cv::Mat(height, width, CV_8UC4, pixels);
         };
 
@@ -38,9 +58,52 @@ namespace DR {
 
         /**
          * 校正输出
+         * 输出尺寸可小于或大于边框的原始尺寸，透视变换直接映射到输出图，不再另行缩放；插值方式按缩放比例选择：
+         * 放大时用三次插值，缩小到一半以内用线性插值，缩得更小时先以整数倍尺寸线性插值输出每一块，再区域插值缩小，避免混叠。
+         * 输出图按固定尺寸分块，由校正线程并行输出，结果与线程数无关。
+         * 开启方案缓存且缩小不超过一半时，以缓存的定点重映射表输出，相同方案的校正只需一次重映射。
          * @param width 位图宽
          * @param height 位图高
          * @param pixels 像素点
+         * @param stride 行字节数
+         * @param mode 输出模式，灰度与二值化时位图为单通道，与变换在同一次输出中完成，不需要另一张全尺寸位图
+         * @param ltx 左上点X轴坐标
+         * @param lty 左上点Y轴坐标
+         * @param rtx 右上点X轴坐标
+         * @param rty 右上点Y轴坐标
+         * @param lbx 左下点X轴坐标
+         * @param lby 左下点Y轴坐标
+         * @param rbx 右下点X轴坐标
+         * @param rby 右下点Y轴坐标
+         * @return 校正完成时返回true，被取消时返回false
+         */
+        bool correct(int width, int height, void *pixels, int stride, int mode,
+                     float ltx, float lty, float rtx, float rty,
+                     float lbx, float lby, float rbx, float rby) const {
+            auto dst = cv::Mat(height, width, mode == OUTPUT_RGBA ? CV_8UC4 : CV_8UC1, pixels,
+                               (size_t) stride);
+            const auto srcRect = toRect(ltx, lty, rtx, rty, lbx, lby, rbx, rby);
+            std::shared_ptr<const DocumentSkewCorrectionPlan> plan;
+            const auto created = obtainPlan(srcRect, width, height, true, plan);
+            if (!correct(dst, 0, width, height, srcRect, mode, plan, created)) {
+                // 被取消，映射表不完整，不缓存
+                return false;
+            }
+            if (created) {
+                DocumentSkewCorrectionPlanCache::getInstance().put(created);
+            }
+            return true;
+        }
+
+        /**
+         * 校正输出到 PNG
+         * 按行分条输出到同一块条缓冲，每条输出后即送入 PNG 流式编码，不会有整张输出图。
+         * 命中方案缓存时以方案重映射，未命中时直接透视变换，不生成方案。
+         * 二值化时以 1 位灰度写入。
+         * @param width 输出图宽
+         * @param height 输出图高
+         * @param mode 输出模式
+         * @param writer PNG 流式编码
          * @param ltx 左上点X轴坐标
          * @param lty 左上点Y轴坐标
          * @param rtx 右上点X轴坐标
@@ -49,29 +112,397 @@ namespace DR {
          * @param lby 左下点Y轴坐标
          * @param rbx 右下点X轴坐标
          * @param rby 右下点Y轴坐标
-         * @param dst 输出图
-         * @return 检测成功时返回true
+         * @return 校正完成时返回true，被取消或写出失败时返回false
          */
-        void correct(int width, int height, void *pixels,
+        bool correct(int width, int height, int mode, PngWriter &writer,
                      float ltx, float lty, float rtx, float rty,
                      float lbx, float lby, float rbx, float rby) const {
-            auto dst = cv::Mat(height, width, CV_8UC4, pixels);
+            const auto srcRect = toRect(ltx, lty, rtx, rty, lbx, lby, rbx, rby);
+            std::shared_ptr<const DocumentSkewCorrectionPlan> plan;
+            // 只使用已缓存的方案，未命中时不生成，否则将分配整张输出图大小的映射表
+            obtainPlan(srcRect, width, height, false, plan);
+            const int channels = mode == OUTPUT_RGBA ? 4 : 1;
+            if (!writer.begin(width, height, channels, mode == OUTPUT_BINARY)) {
+                return false;
+            }
+            cv::Mat band;
+            for (int top = 0; top < height; top += TILE_SIZE) {
+                const int rows = std::min(TILE_SIZE, height - top);
+                band.create(rows, width, CV_8UC(channels));
+                if (!correct(band, top, width, height, srcRect, mode, plan, nullptr)
+                    || !writer.write(band)) {
+                    return false;
+                }
+            }
+            return writer.end();
+        }
+
+        /**
+         * 分条校正输出
+         * 输出图的一条，插值方式的选择与分块方式同 correct。
+         * @param image 原图，可为原图的一个区域，边框坐标基于该区域
+         * @param dst 输出条，为输出图中自 top 行起的若干行
+         * @param top 输出条在输出图中的起始行
+         * @param width 输出图宽
+         * @param height 输出图高
+         * @param srcRect 边框四个点（左上、右上、左下、右下）
+         * @param mode 输出模式
+         * @param threads 校正线程数
+         * @param cancelled 取消标记，可为空
+         * @return 校正完成时返回true，被取消时返回false
+         */
+        static bool correct(const cv::Mat &image, cv::Mat &dst, int top, int width, int height,
+                            const std::vector<cv::Point2f> &srcRect, int mode, int threads,
+                            const std::atomic<bool> *cancelled) {
+            const cv::Mat matrix = getTransform(srcRect, width, height);
+            const double scale = getScale(srcRect, width, height);
+            const int interpolation = scale > UPSCALE_THRESHOLD ? cv::INTER_CUBIC
+                                                                : cv::INTER_LINEAR;
+            const int factor = scale < 0.5 ? std::min((int) std::ceil(1 / scale),
+                                                      MAX_SUPERSAMPLE) : 1;
+            return forEachTile(dst.size(), getTileSize(factor, mode), threads, cancelled,
+                               [&](const cv::Rect &tile, TileBuffer &buffer) {
+                                   output(dst, tile, top, height, mode, buffer,
+                                          [&](const cv::Rect &rect, cv::Mat &out,
+                                              cv::Mat &scratch) {
+                                              if (factor > 1) {
+                                                  // 先以整数倍尺寸输出该块，再区域插值缩小
+                                                  cv::warpPerspective(
+                                                          image, scratch,
+                                                          offset(matrix, rect.x, rect.y, factor),
+                                                          cv::Size(rect.width * factor,
+                                                                   rect.height * factor),
+                                                          cv::INTER_LINEAR);
+                                                  cv::resize(scratch, out, rect.size(), 0, 0,
+                                                             cv::INTER_AREA);
+                                              } else {
+                                                  cv::warpPerspective(
+                                                          image, out, offset(matrix, rect.x, rect.y),
+                                                          rect.size(), interpolation);
+                                              }
+                                          });
+                               });
+        }
+
+        /**
+         * 计算输出条所需的原图区域
+         * 以逆透视变换将输出条的四个角映射回原图，取外接矩形并按插值所需外扩，未裁剪到原图范围内。
+         * @param srcRect 边框四个点（左上、右上、左下、右下）
+         * @param width 输出图宽
+         * @param height 输出图高
+         * @param top 输出条在输出图中的起始行
+         * @param rows 输出条行数
+         * @param mode 输出模式，二值化时包含阈值计算所需的上下相邻行
+         * @param region 原图区域
+         * @return 计算成功时返回true，边框退化时返回false
+         */
+        static bool calculateRegion(const std::vector<cv::Point2f> &srcRect,
+                                    int width, int height, int top, int rows, int mode,
+                                    cv::Rect &region) {
+            if (mode == OUTPUT_BINARY) {
+                const int bottom = std::min(height, top + rows + BINARY_MARGIN);
+                top = std::max(0, top - BINARY_MARGIN);
+                rows = bottom - top;
+            }
+            const cv::Mat matrix = getTransform(srcRect, width, height);
+            cv::Mat inverse;
+            if (cv::invert(matrix, inverse) == 0) {
+                return false;
+            }
+            std::vector<cv::Point2f> corners;
+            corners.emplace_back(0, top);
+            corners.emplace_back(width, top);
+            corners.emplace_back(0, top + rows);
+            corners.emplace_back(width, top + rows);
+            std::vector<cv::Point2f> mapped;
+            cv::perspectiveTransform(corners, mapped, inverse);
+            // 缩小时每个输出像素覆盖多个原图像素，外扩其覆盖范围
+            const double scale = getScale(srcRect, width, height);
+            const int margin = (int) std::ceil(1 / std::min(scale, 1.0)) + REGION_MARGIN;
+            float left = mapped[0].x, right = mapped[0].x;
+            float upper = mapped[0].y, lower = mapped[0].y;
+            for (const auto &point: mapped) {
+                if (!std::isfinite(point.x) || !std::isfinite(point.y)) {
+                    return false;
+                }
+                left = std::min(left, point.x);
+                right = std::max(right, point.x);
+                upper = std::min(upper, point.y);
+                lower = std::max(lower, point.y);
+            }
+            const int x = (int) std::floor(left) - margin;
+            const int y = (int) std::floor(upper) - margin;
+            region = cv::Rect(x, y, (int) std::ceil(right) + 1 + margin - x,
+                              (int) std::ceil(lower) + 1 + margin - y);
+            return true;
+        }
+
+        static std::vector<cv::Point2f> toRect(float ltx, float lty, float rtx, float rty,
+                                               float lbx, float lby, float rbx, float rby) {
             std::vector<cv::Point2f> srcRect;
             srcRect.emplace_back(ltx, lty);
             srcRect.emplace_back(rtx, rty);
             srcRect.emplace_back(lbx, lby);
             srcRect.emplace_back(rbx, rby);
-            std::vector<cv::Point2f> dstRect;
-            dstRect.emplace_back(0, 0);
-            dstRect.emplace_back(dst.cols, 0);
-            dstRect.emplace_back(0, dst.rows);
-            dstRect.emplace_back(dst.cols, dst.rows);
-            cv::warpPerspective(mImage, dst, cv::getPerspectiveTransform(srcRect, dstRect),
-                                dst.size());
+            return srcRect;
+        }
+
+        /**
+         * 取消校正
+         * 可在其他线程调用，正在进行的校正在当前块输出结束后返回，之后的校正直接返回失败。
+         */
+        void cancel() {
+            mCancelled.store(true);
         }
 
     private:
+        // 分块边长，256 * 256 即 OpenCV 变换与缩放单线程处理的像素数上限
+        static const int TILE_SIZE = 256;
+        // 超过该放大比例时使用三次插值，避免原始尺寸取整带来的微小放大也切换插值方式
+        static constexpr double UPSCALE_THRESHOLD = 1.01;
+        // 大幅缩小时中间输出的最大倍数
+        static const int MAX_SUPERSAMPLE = 4;
+        // 原图区域供插值采样的外扩像素
+        static const int REGION_MARGIN = 2;
+        // 二值化的邻域边长与阈值偏移，阈值为邻域均值减去偏移
+        static const int BINARY_BLOCK_SIZE = 31;
+        static const int BINARY_OFFSET = 10;
+        // 二值化时每块向外多输出的像素，使分块阈值与整图一致
+        static const int BINARY_MARGIN = BINARY_BLOCK_SIZE / 2;
+        // 最小分块边长
+        static const int MIN_TILE_SIZE = 32;
+        const int mThreads;
         cv::Mat mImage;
+        std::atomic<bool> mCancelled{false};
+
+        /**
+         * 获取校正方案
+         * 未开启方案缓存、缩小超过一半（大幅缩小时整数倍尺寸的映射表过大，不缓存）或映射表超过缓存大小时为空，
+         * 此时直接透视变换，不分配用不上的映射表；
+         * 缓存未命中时以量化后的边框生成只分配了映射表的方案，输出时每块边计算映射表边重映射并填入方案，
+         * 首次校正仍只有一遍，全部输出完成后由调用方放入缓存。
+         * @param srcRect 边框四个点（左上、右上、左下、右下）
+         * @param width 输出图宽
+         * @param height 输出图高
+         * @param create 缓存未命中时是否生成方案
+         * @param plan 校正方案，可为空
+         * @return 新生成、待输出时填入的方案，命中缓存或不使用方案时为空
+         */
+        std::shared_ptr<DocumentSkewCorrectionPlan> obtainPlan(
+                const std::vector<cv::Point2f> &srcRect, int width, int height, bool create,
+                std::shared_ptr<const DocumentSkewCorrectionPlan> &plan) const {
+            auto &cache = DocumentSkewCorrectionPlanCache::getInstance();
+            if (!cache.canHold(DocumentSkewCorrectionPlan::getSize(width, height))
+                || getScale(srcRect, width, height) < 0.5) {
+                plan = nullptr;
+                return nullptr;
+            }
+            const auto key = DocumentSkewCorrectionPlan::toKey(srcRect, mImage.cols, mImage.rows,
+                                                               width, height);
+            plan = cache.get(key);
+            if (plan || !create) {
+                return nullptr;
+            }
+            const auto quantized = DocumentSkewCorrectionPlan::toRect(key);
+            const auto created = std::make_shared<DocumentSkewCorrectionPlan>(
+                    key, getTransform(quantized, width, height),
+                    getScale(quantized, width, height) > UPSCALE_THRESHOLD ? cv::INTER_CUBIC
+                                                                           : cv::INTER_LINEAR);
+            plan = created;
+            return created;
+        }
+
+        /**
+         * 校正输出到输出图或输出条
+         * 有校正方案时以方案重映射，否则直接透视变换。
+         * 方案待填入时，每块计算其输出区域（二值化时含外扩）的映射表并重映射，再将块自身的部分填入方案，
+         * 映射表的计算与重映射在同一遍中完成。
+         * @param dst 输出图（或输出条）
+         * @param top dst 在输出图中的起始行
+         * @param width 输出图宽
+         * @param height 输出图高
+         * @param srcRect 边框四个点（左上、右上、左下、右下）
+         * @param mode 输出模式
+         * @param plan 校正方案，可为空
+         * @param created 待填入的校正方案，与 plan 相同，不需要填入时为空
+         * @return 校正完成时返回true，被取消时返回false
+         */
+        bool correct(cv::Mat &dst, int top, int width, int height,
+                     const std::vector<cv::Point2f> &srcRect, int mode,
+                     const std::shared_ptr<const DocumentSkewCorrectionPlan> &plan,
+                     const std::shared_ptr<DocumentSkewCorrectionPlan> &created) const {
+            if (!plan) {
+                return correct(mImage, dst, top, width, height, srcRect, mode, mThreads,
+                               &mCancelled);
+            }
+            return forEachTile(dst.size(), getTileSize(1, mode), mThreads, &mCancelled,
+                               [&](const cv::Rect &tile, TileBuffer &buffer) {
+                                   const cv::Rect own(tile.x, top + tile.y,
+                                                      tile.width, tile.height);
+                                   output(dst, tile, top, height, mode, buffer,
+                                          [&](const cv::Rect &rect, cv::Mat &out, cv::Mat &) {
+                                              if (!created) {
+                                                  plan->remap(mImage, out, rect);
+                                                  return;
+                                              }
+                                              const cv::Rect part = own - rect.tl();
+                                              created->build(rect, buffer.map, buffer.table);
+                                              created->remap(mImage, out, buffer.map,
+                                                             buffer.table);
+                                              created->store(own, buffer.map(part),
+                                                             buffer.table(part));
+                                          });
+                               });
+        }
+
+        /**
+         * 块缓冲，每个线程一份，在各块之间复用
+         */
+        struct TileBuffer {
+            cv::Mat scratch;
+            cv::Mat rgba;
+            cv::Mat gray;
+            cv::Mat binary;
+            // 待填入方案时该块的映射表
+            cv::Mat map;
+            cv::Mat table;
+        };
+
+        /**
+         * 计算分块边长
+         * 每块（含整数倍尺寸的中间输出与二值化外扩）不超过 OpenCV 单线程处理的像素数，
+         * OpenCV 不会另开线程，线程数即为全部并行度。
+         */
+        static int getTileSize(int factor, int mode) {
+            const int margin = mode == OUTPUT_BINARY ? BINARY_MARGIN : 0;
+            return std::max(MIN_TILE_SIZE, TILE_SIZE / factor - margin * 2);
+        }
+
+        /**
+         * 输出一块
+         * 彩色时直接输出到位图；灰度时输出到块缓冲后转灰度；二值化时向外多输出邻域所需的像素（不超出输出图），
+         * 转灰度并以自适应阈值二值化后只取块内部分，结果与整图二值化一致。
+         * @param dst 输出图（或输出条）
+         * @param tile 块，基于 dst
+         * @param top dst 在输出图中的起始行
+         * @param height 输出图高
+         * @param mode 输出模式
+         * @param buffer 块缓冲
+         * @param render 输出 RGBA，参数为基于输出图的区域、输出与中间缓冲
+         */
+        template<typename Render>
+        static void output(cv::Mat &dst, const cv::Rect &tile, int top, int height, int mode,
+                           TileBuffer &buffer, const Render &render) {
+            cv::Mat out = dst(tile);
+            const cv::Rect absolute(tile.x, top + tile.y, tile.width, tile.height);
+            if (mode == OUTPUT_RGBA) {
+                render(absolute, out, buffer.scratch);
+                return;
+            }
+            if (mode == OUTPUT_GRAY) {
+                render(absolute, buffer.rgba, buffer.scratch);
+                cv::cvtColor(buffer.rgba, out, cv::COLOR_RGBA2GRAY);
+                return;
+            }
+            const cv::Rect clipped = cv::Rect(absolute.x - BINARY_MARGIN,
+                                              absolute.y - BINARY_MARGIN,
+                                              absolute.width + BINARY_MARGIN * 2,
+                                              absolute.height + BINARY_MARGIN * 2)
+                                     & cv::Rect(0, 0, dst.cols, height);
+            render(clipped, buffer.rgba, buffer.scratch);
+            cv::cvtColor(buffer.rgba, buffer.gray, cv::COLOR_RGBA2GRAY);
+            cv::adaptiveThreshold(buffer.gray, buffer.binary, 255, cv::ADAPTIVE_THRESH_MEAN_C,
+                                  cv::THRESH_BINARY, BINARY_BLOCK_SIZE, BINARY_OFFSET);
+            buffer.binary(cv::Rect(absolute.x - clipped.x, absolute.y - clipped.y,
+                                   absolute.width, absolute.height)).copyTo(out);
+        }
+
+        /**
+         * 按固定尺寸分块并行处理
+         * 分块与线程数无关；各线程依次领取下一块，每块之间检查是否已取消。
+         * @param size 输出图尺寸
+         * @param tileSize 分块边长
+         * @param threads 线程数
+         * @param cancelled 取消标记，可为空
+         * @param function 块处理，参数为块与该线程复用的块缓冲
+         * @return 全部块处理完成时返回true，被取消时返回false
+         */
+        template<typename Function>
+        static bool forEachTile(const cv::Size &size, int tileSize, int threads,
+                                const std::atomic<bool> *cancelled, const Function &function) {
+            const int columns = (size.width + tileSize - 1) / tileSize;
+            const int count = columns * ((size.height + tileSize - 1) / tileSize);
+            std::atomic<int> next{0};
+            std::atomic<bool> stopped{false};
+            auto worker = [&]() {
+                TileBuffer buffer;
+                while (true) {
+                    if (cancelled != nullptr && cancelled->load()) {
+                        stopped.store(true);
+                        return;
+                    }
+                    const int index = next.fetch_add(1);
+                    if (index >= count) {
+                        return;
+                    }
+                    const int x = (index % columns) * tileSize;
+                    const int y = (index / columns) * tileSize;
+                    function(cv::Rect(x, y, std::min(tileSize, size.width - x),
+                                      std::min(tileSize, size.height - y)), buffer);
+                }
+            };
+            const int workerCount = std::max(1, std::min(threads, count));
+            std::vector<std::thread> workers;
+            workers.reserve((size_t) workerCount - 1);
+            for (int i = 1; i < workerCount; i++) {
+                workers.emplace_back(worker);
+            }
+            worker();
+            for (std::thread &thread: workers) {
+                thread.join();
+            }
+            return !stopped.load();
+        }
+
+        static cv::Mat getTransform(const std::vector<cv::Point2f> &srcRect,
+                                    int width, int height) {
+            std::vector<cv::Point2f> dstRect;
+            dstRect.emplace_back(0, 0);
+            dstRect.emplace_back(width, 0);
+            dstRect.emplace_back(0, height);
+            dstRect.emplace_back(width, height);
+            return cv::getPerspectiveTransform(srcRect, dstRect);
+        }
+
+        /**
+         * 计算输出尺寸相对边框原始尺寸的缩放比例，取缩得更多的方向
+         */
+        static double getScale(const std::vector<cv::Point2f> &srcRect, int width, int height) {
+            const double naturalWidth = (cv::norm(srcRect[1] - srcRect[0])
+                                         + cv::norm(srcRect[3] - srcRect[2])) * 0.5;
+            const double naturalHeight = (cv::norm(srcRect[2] - srcRect[0])
+                                          + cv::norm(srcRect[3] - srcRect[1])) * 0.5;
+            return std::min(width / std::max(naturalWidth, 1.0),
+                            height / std::max(naturalHeight, 1.0));
+        }
+
+        /**
+         * 平移并缩放输出坐标系
+         * @param matrix 原图到输出图的透视变换矩阵
+         * @param x 输出块的起始列
+         * @param y 输出块的起始行
+         * @param scale 输出块的缩放倍数
+         * @return 原图到输出块的透视变换矩阵，即 S(scale)·T(-x, -y)·matrix，
+         * 放大时按像素中心对齐，使区域插值缩小后的像素中心与直接输出一致
+         */
+        static cv::Mat offset(const cv::Mat &matrix, int x, int y, double scale = 1) {
+            cv::Mat transform = cv::Mat::eye(3, 3, CV_64F);
+            transform.at<double>(0, 0) = scale;
+            transform.at<double>(1, 1) = scale;
+            transform.at<double>(0, 2) = -x * scale + (scale - 1) * 0.5;
+            transform.at<double>(1, 2) = -y * scale + (scale - 1) * 0.5;
+            return transform * matrix;
+        }
     };
 }
 
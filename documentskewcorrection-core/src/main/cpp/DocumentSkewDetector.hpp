@@ -20,6 +20,8 @@
 #ifndef DOCUMENTSKEWCORRECTION_DOCUMENTSKEWDETECTOR_HPP
 #define DOCUMENTSKEWCORRECTION_DOCUMENTSKEWDETECTOR_HPP
 
+#include <atomic>
+#include <chrono>
 #include <opencv2/core/mat.hpp>
 #include <opencv2/imgproc.hpp>
 
@@ -28,6 +30,8 @@ namespace DR {
     class DocumentSkewDetector {
 
     public:
+        typedef std::chrono::steady_clock Clock;
+
         DocumentSkewDetector() = default;
 
         virtual ~DocumentSkewDetector() = default;
@@ -44,12 +48,25 @@ namespace DR {
          * @param rby 待输出的右下点Y轴坐标
          * @return 检测成功时返回true
          */
-        virtual bool detect(int &ltx, int &lty, int &rtx, int &rty,
-                    int &lbx, int &lby, int &rbx, int &rby) const = 0;
-    protected:
+        bool detect(int &ltx, int &lty, int &rtx, int &rty,
+                    int &lbx, int &lby, int &rbx, int &rby) const {
+            float fltx, flty, frtx, frty, flbx, flby, frbx, frby;
+            if (!detect(fltx, flty, frtx, frty, flbx, flby, frbx, frby)) {
+                return false;
+            }
+            ltx = cvRound(fltx);
+            lty = cvRound(flty);
+            rtx = cvRound(frtx);
+            rty = cvRound(frty);
+            lbx = cvRound(flbx);
+            lby = cvRound(flby);
+            rbx = cvRound(frbx);
+            rby = cvRound(frby);
+            return true;
+        }
+
         /**
-         * 检测边框
-         * @param image 二值化图或者灰度图
+         * 检测边框（亚像素精度）
          * @param ltx 待输出的左上点X轴坐标
          * @param lty 待输出的左上点Y轴坐标
          * @param rtx 待输出的右上点X轴坐标
@@ -60,87 +77,528 @@ namespace DR {
          * @param rby 待输出的右下点Y轴坐标
          * @return 检测成功时返回true
          */
-        static bool calculateBounds(const cv::Mat &image, int &ltx, int &lty, int &rtx, int &rty,
-                                    int &lbx, int &lby, int &rbx, int &rby) {
-            // 计算边框
-            std::vector<cv::Point> result;
+        bool detect(float &ltx, float &lty, float &rtx, float &rty,
+                    float &lbx, float &lby, float &rbx, float &rby) const {
+            float points[8];
+            float confidence;
+            int parameter;
+            if (!detect(points, confidence, parameter)) {
+                return false;
+            }
+            ltx = points[0];
+            lty = points[1];
+            rtx = points[2];
+            rty = points[3];
+            lbx = points[4];
+            lby = points[5];
+            rbx = points[6];
+            rby = points[7];
+            return true;
+        }
+
+        /**
+         * 检测边框（附带置信度）
+         * @param points 待输出的边框点，依次为左上、右上、左下、右下点的X、Y轴坐标
+         * @param confidence 待输出的置信度，范围为 0 到 1
+         * @param parameter 待输出的产生结果的参数序号，没有参数组的检测器输出 -1
+         * @return 检测成功时返回true
+         */
+        bool detect(float points[8], float &confidence, int &parameter) const {
+            bool timedOut;
+            return detect(points, confidence, parameter, Clock::time_point::max(), timedOut);
+        }
+
+        /**
+         * 检测边框（限时）
+         * 在每轮预处理之间检查截止时间，超时后不再开始新的一轮，返回已得到的最优结果；
+         * 没有任何一轮检测成功时，返回未达标候选中得分最高的一个（置信度较低），并标记超时。
+         * @param points 待输出的边框点，依次为左上、右上、左下、右下点的X、Y轴坐标
+         * @param confidence 待输出的置信度，范围为 0 到 1
+         * @param parameter 待输出的产生结果的参数序号，没有参数组的检测器输出 -1
+         * @param deadline 截止时间
+         * @param timedOut 待输出的是否超时
+         * @return 检测成功或超时得到备选结果时返回true，超时且没有任何候选时返回false
+         */
+        virtual bool detect(float points[8], float &confidence, int &parameter,
+                            const Clock::time_point &deadline, bool &timedOut) const = 0;
+
+        /**
+         * 设置是否精修边框
+         * 开启后在检测图上沿四条边的窄带内拟合直线，以直线交点作为亚像素精度的角点。
+         * @param refine 是否精修
+         */
+        void setRefine(bool refine) {
+            mRefine = refine;
+        }
+
+        /**
+         * 取消检测
+         * 可在其他线程调用，正在进行的检测在当前一轮处理结束后返回失败并释放临时数据，之后的检测直接返回失败。
+         */
+        void cancel() {
+            mCancelled.store(true);
+        }
+
+    protected:
+        /**
+         * 检测边框的工作区
+         * clear 只重置元素个数不释放容量，复用同一工作区的检测在稳定状态下不再为容器分配内存。
+         */
+        struct Workspace {
             std::vector<std::vector<cv::Point>> contours;
-            //提取边框
-            cv::findContours(image, contours, cv::RETR_EXTERNAL, cv::CHAIN_APPROX_NONE);
-            //按面积排序
-            std::sort(contours.begin(), contours.end(), sortByArea);
-            if (contours.size() > 0) {
-                std::vector<cv::Point> contour = contours[0];
-                double arc = arcLength(contour, true);
-                std::vector<cv::Point> outDP;
-                //多变形逼近
-                cv::approxPolyDP(cv::Mat(contour), outDP, 0.01 * arc, true);
-                //筛选去除相近的点
-                std::vector<cv::Point> selectedPoints = selectPoints(outDP);
-                if (selectedPoints.size() != 4) {
-                    //如果筛选出来之后不是四边形
-                    return false;
-                } else {
-                    int widthMin = selectedPoints[0].x;
-                    int widthMax = selectedPoints[0].x;
-                    int heightMin = selectedPoints[0].y;
-                    int heightMax = selectedPoints[0].y;
-                    for (int k = 0; k < 4; k++) {
-                        if (selectedPoints[k].x < widthMin) {
-                            widthMin = selectedPoints[k].x;
-                        }
-                        if (selectedPoints[k].x > widthMax) {
-                            widthMax = selectedPoints[k].x;
-                        }
-                        if (selectedPoints[k].y < heightMin) {
-                            heightMin = selectedPoints[k].y;
+            std::vector<std::pair<double, size_t>> areas;
+        };
+
+        /**
+         * 重置取消状态
+         */
+        void resetCancelled() {
+            mCancelled.store(false);
+        }
+
+        /**
+         * 位图转灰度图
+         * @param width 位图宽
+         * @param height 位图高
+         * @param pixels 像素点
+         * @param alpha 是否为 RGBA_8888 格式，否则为 RGB_565 格式
+         * @return 灰度图
+         */
+        static cv::Mat toGray(int width, int height, void *pixels, bool alpha) {
+            cv::Mat gray;
+            toGray(width, height, pixels, alpha, gray);
+            return gray;
+        }
+
+        /**
+         * 位图转灰度图
+         * 输出图尺寸不变时直接复用其内存，不重新分配。
+         * @param width 位图宽
+         * @param height 位图高
+         * @param pixels 像素点
+         * @param alpha 是否为 RGBA_8888 格式，否则为 RGB_565 格式
+         * @param gray 待输出的灰度图
+         */
+        static void toGray(int width, int height, void *pixels, bool alpha, cv::Mat &gray) {
+            if (alpha) {
+                const cv::Mat image(height, width, CV_8UC4, pixels);
+                cv::cvtColor(image, gray, cv::COLOR_RGBA2GRAY);
+            } else {
+                const cv::Mat image(height, width, CV_8UC2, pixels);
+                cv::cvtColor(image, gray, cv::COLOR_BGR5652GRAY);
+            }
+        }
+
+        /**
+         * 位图缩小并转灰度图
+         * 区域平均缩小与灰度转换在一次遍历中完成：逐行将源像素的灰度按所属目标列累加，
+         * 不产生原尺寸的彩色或灰度中间图。灰度系数与 OpenCV 一致。
+         * @param width 位图宽
+         * @param height 位图高
+         * @param pixels 像素点
+         * @param alpha 是否为 RGBA_8888 格式，否则为 RGB_565 格式
+         * @param targetWidth 目标宽，不小于位图宽且目标高不小于位图高时不缩小
+         * @param targetHeight 目标高
+         * @param gray 待输出的灰度图，尺寸不变时直接复用其内存
+         */
+        static void toGray(int width, int height, void *pixels, bool alpha,
+                           int targetWidth, int targetHeight, cv::Mat &gray) {
+            if (targetWidth <= 0 || targetHeight <= 0
+                || (targetWidth >= width && targetHeight >= height)) {
+                toGray(width, height, pixels, alpha, gray);
+                return;
+            }
+            targetWidth = std::min(targetWidth, width);
+            targetHeight = std::min(targetHeight, height);
+            gray.create(targetHeight, targetWidth, CV_8UC1);
+            // 每个源像素列所属的目标列，及每个目标列包含的源像素列数
+            std::vector<int> columns((size_t) width);
+            std::vector<uint32_t> counts((size_t) targetWidth, 0);
+            for (int x = 0; x < width; x++) {
+                const int column = (int) ((int64_t) x * targetWidth / width);
+                columns[x] = column;
+                counts[column]++;
+            }
+            // 灰度按 14 位定点数累加
+            std::vector<uint64_t> sums((size_t) targetWidth);
+            int y = 0;
+            for (int row = 0; row < targetHeight; row++) {
+                const int end = (int) ((int64_t) (row + 1) * height / targetHeight);
+                const int rows = end - y;
+                std::fill(sums.begin(), sums.end(), 0);
+                for (; y < end; y++) {
+                    if (alpha) {
+                        const uint8_t *pixel = (const uint8_t *) pixels + (size_t) y * width * 4;
+                        for (int x = 0; x < width; x++, pixel += 4) {
+                            sums[columns[x]] += pixel[0] * GRAY_R + pixel[1] * GRAY_G
+                                                + pixel[2] * GRAY_B;
                         }
-                        if (selectedPoints[k].y > heightMax) {
-                            heightMax = selectedPoints[k].y;
+                    } else {
+                        const uint16_t *pixel = (const uint16_t *) pixels + (size_t) y * width;
+                        for (int x = 0; x < width; x++) {
+                            const uint16_t value = pixel[x];
+                            sums[columns[x]] += ((value >> 8) & 0xf8) * GRAY_R
+                                                + ((value >> 3) & 0xfc) * GRAY_G
+                                                + ((value << 3) & 0xf8) * GRAY_B;
                         }
                     }
-                    //选择区域外围矩形面积
-                    int selectArea = (widthMax - widthMin) * (heightMax - heightMin);
-                    int imageArea = image.cols * image.rows;
-                    if (selectArea < (imageArea / 20)) {
-                        result.clear();
-                        //筛选出来的区域太小
-                        return false;
-                    } else {
-                        result = selectedPoints;
-                        if (result.size() != 4) {
-                            cv::Point2f p[4];
-                            p[0] = cv::Point2f(0, 0);
-                            p[1] = cv::Point2f(image.cols, 0);
-                            p[2] = cv::Point2f(image.cols, image.rows);
-                            p[3] = cv::Point2f(0, image.rows);
-                            result.push_back(p[0]);
-                            result.push_back(p[1]);
-                            result.push_back(p[2]);
-                            result.push_back(p[3]);
+                }
+                auto *output = gray.ptr<uchar>(row);
+                for (int x = 0; x < targetWidth; x++) {
+                    const uint64_t area = (uint64_t) counts[x] * rows;
+                    output[x] = (uchar) std::min<uint64_t>(
+                            255, ((sums[x] + area / 2) / area + (1 << 13)) >> 14);
+                }
+            }
+        }
+
+        /**
+         * 是否精修边框
+         * @return 需要精修边框时返回true
+         */
+        bool isRefine() const {
+            return mRefine;
+        }
+
+        /**
+         * 是否已取消
+         * @return 已取消时返回true
+         */
+        bool isCancelled() const {
+            return mCancelled.load();
+        }
+
+        /**
+         * 检测边框
+         * 轮廓面积只计算一次，取面积最大的若干个轮廓作为候选，按四边形程度、凸性、填充率与边缘支撑度评分，
+         * 选出得分最高的候选，避免最大轮廓不是规整四边形时整轮预处理被浪费。
+         * @param image 二值化图或者灰度图
+         * @param refine 是否精修边框
+         * @param points 待输出的边框点，依次为左上、右上、左下、右下点的X、Y轴坐标
+         * @param score 待输出的候选得分，范围为 0 到 1
+         * @return 检测成功时返回true
+         */
+        static bool calculateBounds(const cv::Mat &image, bool refine,
+                                    float points[8], float &score) {
+            Workspace workspace;
+            return calculateBounds(image, refine, points, score, workspace);
+        }
+
+        /**
+         * 检测边框
+         * @param image 二值化图或者灰度图
+         * @param refine 是否精修边框
+         * @param points 待输出的边框点，依次为左上、右上、左下、右下点的X、Y轴坐标
+         * @param score 待输出的候选得分，范围为 0 到 1
+         * @param workspace 工作区，轮廓与面积的容器在多次检测间复用
+         * @return 检测成功时返回true
+         */
+        static bool calculateBounds(const cv::Mat &image, bool refine,
+                                    float points[8], float &score, Workspace &workspace) {
+            std::vector<std::vector<cv::Point>> &contours = workspace.contours;
+            //提取边框
+            cv::findContours(image, contours, cv::RETR_EXTERNAL, cv::CHAIN_APPROX_NONE);
+            std::vector<std::pair<double, size_t>> &areas = workspace.areas;
+            areas.clear();
+            if (contours.empty()) {
+                return false;
+            }
+            // 面积只计算一次，部分排序取出面积最大的若干个候选
+            areas.reserve(contours.size());
+            for (size_t i = 0; i < contours.size(); i++) {
+                areas.emplace_back(std::fabs(cv::contourArea(contours[i])), i);
+            }
+            const size_t count = std::min(areas.size(), (size_t) CANDIDATE_COUNT);
+            std::partial_sort(areas.begin(), areas.begin() + count, areas.end(),
+                              [](const std::pair<double, size_t> &a1,
+                                 const std::pair<double, size_t> &a2) {
+                                  return a1.first > a2.first;
+                              });
+            cv::Point2f corners[4];
+            double bestScore = -1;
+            for (size_t i = 0; i < count; i++) {
+                cv::Point2f candidate[4];
+                const double score = scoreCandidate(image, contours[areas[i].second],
+                                                    areas[i].first, candidate);
+                if (score > bestScore) {
+                    bestScore = score;
+                    std::copy(candidate, candidate + 4, corners);
+                }
+            }
+            if (bestScore < 0) {
+                return false;
+            }
+            if (refine) {
+                refineBounds(image, corners);
+            }
+            toPoints(corners, points);
+            score = (float) bestScore;
+            return true;
+        }
+
+        /**
+         * 计算未达标时的备选边框
+         * 须紧接在检测失败的 calculateBounds 之后调用，取其中面积最大的轮廓的最小外接矩形作为边框，
+         * 供限时检测在超时且没有任何一轮检测成功时尽力返回。
+         * @param image calculateBounds 所用的二值化图
+         * @param workspace calculateBounds 所用的工作区
+         * @param points 待输出的边框点，依次为左上、右上、左下、右下点的X、Y轴坐标
+         * @param score 待输出的备选得分，范围为 0 到 FALLBACK_WEIGHT，越大越可信
+         * @return 没有可用轮廓时返回false
+         */
+        static bool calculateFallback(const cv::Mat &image, const Workspace &workspace,
+                                      float points[8], float &score) {
+            if (workspace.areas.empty()) {
+                return false;
+            }
+            const std::vector<cv::Point> &contour = workspace.contours[workspace.areas[0].second];
+            const double area = workspace.areas[0].first;
+            if (contour.size() < 4 || area <= 0) {
+                return false;
+            }
+            const cv::RotatedRect rect = cv::minAreaRect(contour);
+            const double rectArea = (double) rect.size.width * rect.size.height;
+            if (rectArea <= 0) {
+                return false;
+            }
+            cv::Point2f box[4];
+            rect.points(box);
+            // 按左上，右上，右下，左下排序：左上 x+y 最小，右下最大，右上 x-y 最大，左下最小
+            cv::Point2f corners[4] = {box[0], box[0], box[0], box[0]};
+            for (const cv::Point2f &point: box) {
+                if (point.x + point.y < corners[0].x + corners[0].y) {
+                    corners[0] = point;
+                }
+                if (point.x - point.y > corners[1].x - corners[1].y) {
+                    corners[1] = point;
+                }
+                if (point.x + point.y > corners[2].x + corners[2].y) {
+                    corners[2] = point;
+                }
+                if (point.x - point.y < corners[3].x - corners[3].y) {
+                    corners[3] = point;
+                }
+            }
+            for (cv::Point2f &corner: corners) {
+                corner.x = std::min(std::max(corner.x, 0.f), image.cols - 1.f);
+                corner.y = std::min(std::max(corner.y, 0.f), image.rows - 1.f);
+            }
+            toPoints(corners, points);
+            // 填充率与面积占比，折减后低于达标候选的常见得分
+            const double fill = std::min(1.0, area / rectArea);
+            const double ratio = std::sqrt(std::min(1.0, rectArea / (image.cols * image.rows)));
+            score = (float) (FALLBACK_WEIGHT * fill * ratio);
+            return true;
+        }
+
+        /**
+         * 精修边框
+         * 沿每条边在窄带内收集边缘像素，以 Huber 稳健最小二乘拟合直线，相邻两边直线的交点即为亚像素角点。
+         * 某条边的边缘像素不足或交点偏离原角点过远时，该角点保持不变。
+         * @param image 二值化图
+         * @param corners 按左上，右上，右下，左下排序的角点，精修结果直接写回
+         */
+        static void refineBounds(const cv::Mat &image, cv::Point2f corners[4]) {
+            cv::Vec4f lines[4];
+            bool fitted[4];
+            for (int i = 0; i < 4; i++) {
+                fitted[i] = fitSideLine(image, corners[i], corners[(i + 1) % 4], lines[i]);
+            }
+            cv::Point2f refined[4];
+            for (int i = 0; i < 4; i++) {
+                // 角点 i 为边 i-1 与边 i 的交点
+                const int previous = (i + 3) % 4;
+                refined[i] = corners[i];
+                if (!fitted[previous] || !fitted[i]) {
+                    continue;
+                }
+                cv::Point2f intersection;
+                if (!intersectLines(lines[previous], lines[i], intersection)) {
+                    continue;
+                }
+                const cv::Point2f offset = intersection - corners[i];
+                if (offset.x * offset.x + offset.y * offset.y >
+                    REFINE_BAND * REFINE_BAND * 4) {
+                    continue;
+                }
+                refined[i] = intersection;
+            }
+            for (int i = 0; i < 4; i++) {
+                corners[i] = refined[i];
+            }
+        }
+
+        /**
+         * 按左上，右上，右下，左下排序的角点转为左上、右上、左下、右下点的坐标
+         * @param corners 角点
+         * @param points 待输出的边框点
+         */
+        static void toPoints(const cv::Point2f corners[4], float points[8]) {
+            points[0] = corners[0].x;
+            points[1] = corners[0].y;
+            points[2] = corners[1].x;
+            points[3] = corners[1].y;
+            points[4] = corners[3].x;
+            points[5] = corners[3].y;
+            points[6] = corners[2].x;
+            points[7] = corners[2].y;
+        }
+
+        /**
+         * 边缘支撑度
+         * @param image 二值化图
+         * @param start 边起点
+         * @param end 边终点
+         * @return 边上落在边缘像素附近（1 像素以内）的采样点比例
+         */
+        static double sideSupport(const cv::Mat &image, const cv::Point2f &start,
+                                  const cv::Point2f &end) {
+            const cv::Point2f direction = end - start;
+            const float length = std::sqrt(direction.x * direction.x + direction.y * direction.y);
+            const int samples = std::max(1, (int) (length / 2));
+            int hit = 0;
+            for (int s = 0; s <= samples; s++) {
+                const cv::Point2f p = start + direction * ((float) s / samples);
+                const int cx = cvRound(p.x);
+                const int cy = cvRound(p.y);
+                bool found = false;
+                // 允许 1 像素的偏差
+                for (int y = cy - 1; y <= cy + 1 && !found; y++) {
+                    for (int x = cx - 1; x <= cx + 1 && !found; x++) {
+                        if (x >= 0 && y >= 0 && x < image.cols && y < image.rows
+                            && image.at<uchar>(y, x) != 0) {
+                            found = true;
                         }
-                        // 按左上，右上，左上，右下排序
-                        std::vector<cv::Point> points = sortPointClockwise(result);
-                        ltx = points[0].x;
-                        lty = points[0].y;
-                        rtx = points[1].x;
-                        rty = points[1].y;
-                        rbx = points[2].x;
-                        rby = points[2].y;
-                        lbx = points[3].x;
-                        lby = points[3].y;
-                        return true;
                     }
                 }
+                if (found) {
+                    hit++;
+                }
             }
-            return false;
+            return (double) hit / (samples + 1);
         }
 
     private:
-        static bool sortByArea(const std::vector<cv::Point> &v1, const std::vector<cv::Point> &v2) {
-            double v1Area = fabs(contourArea(cv::Mat(v1)));
-            double v2Area = fabs(contourArea(cv::Mat(v2)));
-            return v1Area > v2Area;
+        // 精修边框时沿边收集边缘像素的窄带半宽
+        static const int REFINE_BAND = 3;
+        // 参与评分的候选轮廓数量
+        static const int CANDIDATE_COUNT = 5;
+        // 备选边框得分的折减比例
+        static constexpr double FALLBACK_WEIGHT = 0.5;
+        // 14 位定点灰度系数，与 OpenCV 的 0.299、0.587、0.114 一致
+        static const int GRAY_R = 4899;
+        static const int GRAY_G = 9617;
+        static const int GRAY_B = 1868;
+
+        bool mRefine = false;
+        std::atomic<bool> mCancelled{false};
+
+        static bool fitSideLine(const cv::Mat &image, const cv::Point2f &start,
+                                const cv::Point2f &end, cv::Vec4f &line) {
+            const cv::Point2f direction = end - start;
+            const float length = std::sqrt(direction.x * direction.x + direction.y * direction.y);
+            if (length < REFINE_BAND * 4) {
+                return false;
+            }
+            const cv::Point2f unit = direction * (1.f / length);
+            const cv::Point2f normal(-unit.y, unit.x);
+            // 两端各留出一段，避免拟合到相邻边的边缘像素
+            const int first = (int) (length * 0.1f);
+            const int last = (int) (length * 0.9f);
+            std::vector<cv::Point2f> points;
+            for (int t = first; t <= last; t++) {
+                const cv::Point2f center = start + unit * (float) t;
+                for (int d = -REFINE_BAND; d <= REFINE_BAND; d++) {
+                    const cv::Point2f p = center + normal * (float) d;
+                    const int x = cvRound(p.x);
+                    const int y = cvRound(p.y);
+                    if (x < 0 || y < 0 || x >= image.cols || y >= image.rows) {
+                        continue;
+                    }
+                    if (image.at<uchar>(y, x) != 0) {
+                        points.emplace_back((float) x, (float) y);
+                    }
+                }
+            }
+            if (points.size() < (size_t) std::max(10, (last - first) / 3)) {
+                return false;
+            }
+            cv::fitLine(points, line, cv::DIST_HUBER, 0, 0.01, 0.01);
+            return true;
+        }
+
+        static bool intersectLines(const cv::Vec4f &line1, const cv::Vec4f &line2,
+                                   cv::Point2f &intersection) {
+            // 直线以方向向量(vx, vy)与直线上一点(x0, y0)表示
+            const float cross = line1[0] * line2[1] - line1[1] * line2[0];
+            if (std::abs(cross) < 1e-6f) {
+                return false;
+            }
+            const float dx = line2[2] - line1[2];
+            const float dy = line2[3] - line1[3];
+            const float t = (dx * line2[1] - dy * line2[0]) / cross;
+            intersection.x = line1[2] + line1[0] * t;
+            intersection.y = line1[3] + line1[1] * t;
+            return true;
+        }
+
+        /**
+         * 候选轮廓评分
+         * @param image 二值化图
+         * @param contour 候选轮廓
+         * @param area 候选轮廓面积
+         * @param corners 按左上，右上，右下，左下排序的角点
+         * @return 得分，范围为 0 到 1，候选无效时返回 -1
+         */
+        static double scoreCandidate(const cv::Mat &image, const std::vector<cv::Point> &contour,
+                                     double area, cv::Point2f corners[4]) {
+            double arc = arcLength(contour, true);
+            std::vector<cv::Point> outDP;
+            //多变形逼近
+            cv::approxPolyDP(contour, outDP, 0.01 * arc, true);
+            if (outDP.size() < 4) {
+                return -1;
+            }
+            //筛选去除相近的点
+            std::vector<cv::Point> selectedPoints = selectPoints(outDP);
+            if (selectedPoints.size() != 4) {
+                //如果筛选出来之后不是四边形
+                return -1;
+            }
+            //选择区域外围矩形面积
+            const cv::Rect rect = cv::boundingRect(selectedPoints);
+            const int imageArea = image.cols * image.rows;
+            if ((rect.width - 1) * (rect.height - 1) < (imageArea / 20)) {
+                //筛选出来的区域太小
+                return -1;
+            }
+            // 按左上，右上，右下，左下排序
+            std::vector<cv::Point> points = sortPointClockwise(selectedPoints);
+            if (points.size() != 4) {
+                return -1;
+            }
+            const double quadArea = std::fabs(cv::contourArea(points));
+            if (quadArea <= 0) {
+                return -1;
+            }
+            // 四边形程度：逼近多边形顶点越接近 4 越好
+            const double quadness = 4.0 / outDP.size();
+            // 凸性：非凸四边形多为误检
+            const double convexity = cv::isContourConvex(points) ? 1 : 0.5;
+            // 填充率：轮廓面积与四边形面积之比，开口或杂乱的轮廓填充率低
+            const double fill = std::min(area, quadArea) / std::max(area, quadArea);
+            // 面积占比：文档通常占据画面主体
+            const double ratio = std::sqrt(std::min(1.0, quadArea / imageArea));
+            for (int k = 0; k < 4; k++) {
+                corners[k] = cv::Point2f((float) points[k].x, (float) points[k].y);
+            }
+            // 边缘支撑度：四条边上落在边缘像素附近的采样点比例
+            double support = 0;
+            for (int k = 0; k < 4; k++) {
+                support += sideSupport(image, corners[k], corners[(k + 1) % 4]);
+            }
+            support /= 4;
+            return 0.3 * support + 0.2 * fill + 0.15 * quadness + 0.15 * convexity + 0.2 * ratio;
         }
 
         //type代表左上，左下，右上，右下等方位
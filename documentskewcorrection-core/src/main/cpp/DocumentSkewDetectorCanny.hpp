@@ -20,69 +20,674 @@
 #ifndef DOCUMENTSKEWCORRECTION_DOCUMENTSKEWDETECTORCANNY_HPP
 #define DOCUMENTSKEWCORRECTION_DOCUMENTSKEWDETECTORCANNY_HPP
 
+#include <array>
+#include <atomic>
+#include <cstdint>
+#include <functional>
+#include <mutex>
+#include <thread>
 #include "DocumentSkewDetector.hpp"
 
 namespace DR {
     class DocumentSkewDetectorCanny final : public DocumentSkewDetector {
 
     public:
-        explicit DocumentSkewDetectorCanny(int width, int height, void *pixels, bool alpha) {
-            if (alpha) {
-                cv::Mat image = cv::Mat(height, width, CV_8UC4, pixels);
-                mImage = cv::Mat(height, width, CV_8UC1);
-                cv::cvtColor(image, mImage, cv::COLOR_RGBA2GRAY);
-                image.release();
+        // 任务执行情况：未执行、执行未检测到、检测成功
+        static const int TASK_SKIPPED = 0;
+        static const int TASK_FAILED = 1;
+        static const int TASK_SUCCEEDED = 2;
+
+        /**
+         * 构造
+         * @param width 位图宽
+         * @param height 位图高
+         * @param pixels 像素点
+         * @param alpha 是否为 RGBA_8888 格式，否则为 RGB_565 格式
+         * @param targetWidth 目标宽，小于位图宽时在转灰度图的同时区域平均缩小
+         * @param targetHeight 目标高，小于位图高时在转灰度图的同时区域平均缩小
+         * @param threads 检测线程数
+         * @param pyramidSize 金字塔模式下粗检测层的目标尺寸，不大于 0 时不使用金字塔模式
+         * @param order 任务执行顺序，须为全部任务序号的排列，无效时按默认优先级执行
+         * @param count 任务执行顺序的长度
+         */
+        explicit DocumentSkewDetectorCanny(int width, int height, void *pixels, bool alpha,
+                                           int targetWidth, int targetHeight,
+                                           int threads, int pyramidSize,
+                                           const int *order, int count)
+                : DocumentSkewDetectorCanny(cv::Mat(), threads, pyramidSize, order, count) {
+            toGray(width, height, pixels, alpha, targetWidth, targetHeight, mPyramid[0]);
+            buildPyramid();
+        }
+
+        /**
+         * 构造
+         * @param gray 灰度图，由检测器持有
+         * @param threads 检测线程数
+         * @param pyramidSize 金字塔模式下粗检测层的目标尺寸，不大于 0 时不使用金字塔模式
+         * @param order 任务执行顺序，须为全部任务序号的排列，无效时按默认优先级执行
+         * @param count 任务执行顺序的长度
+         */
+        explicit DocumentSkewDetectorCanny(const cv::Mat &gray, int threads, int pyramidSize,
+                                           const int *order, int count)
+                : mThreads(threads < 1 ? 1 : threads), mPyramidSize(pyramidSize),
+                  mWorkers((size_t) mThreads) {
+            setOrder(count == TASK_COUNT ? order : nullptr);
+            mPyramid.push_back(gray);
+            buildPyramid();
+        }
+
+        /**
+         * 重置检测图
+         * 用于视频帧或批量图片复用同一检测器：灰度图、金字塔各层、高斯模糊、边缘图及轮廓容器均在原内存上覆盖，
+         * 尺寸与上一帧相同时不再分配内存。同时清除取消状态，并以传入的顺序更新任务执行顺序。
+         * @param width 位图宽
+         * @param height 位图高
+         * @param pixels 像素点
+         * @param alpha 是否为 RGBA_8888 格式，否则为 RGB_565 格式
+         * @param targetWidth 目标宽，小于位图宽时在转灰度图的同时区域平均缩小
+         * @param targetHeight 目标高，小于位图高时在转灰度图的同时区域平均缩小
+         * @param order 任务执行顺序，须为全部任务序号的排列，无效时按默认优先级执行
+         * @param count 任务执行顺序的长度
+         */
+        void reset(int width, int height, void *pixels, bool alpha,
+                   int targetWidth, int targetHeight, const int *order, int count) {
+            toGray(width, height, pixels, alpha, targetWidth, targetHeight, mPyramid[0]);
+            buildPyramid();
+            setOrder(count == TASK_COUNT ? order : nullptr);
+            resetCancelled();
+        }
+
+        /**
+         * 以亮度平面重置检测图
+         * @param data 亮度平面数据
+         * @param width 宽
+         * @param height 高
+         * @param rowStride 行跨度
+         * @param targetWidth 目标宽，小于宽时在原生层以区域插值缩小
+         * @param targetHeight 目标高，小于高时在原生层以区域插值缩小
+         * @param order 任务执行顺序，须为全部任务序号的排列，无效时按默认优先级执行
+         * @param count 任务执行顺序的长度
+         */
+        void resetLuma(void *data, int width, int height, int rowStride,
+                       int targetWidth, int targetHeight, const int *order, int count) {
+            const cv::Mat luma(height, width, CV_8UC1, data, (size_t) rowStride);
+            if (isShrink(width, height, targetWidth, targetHeight)) {
+                cv::resize(luma, mPyramid[0], cv::Size(targetWidth, targetHeight), 0, 0,
+                           cv::INTER_AREA);
             } else {
-                cv::Mat image = cv::Mat(height, width, CV_8UC2, pixels);
-                mImage = cv::Mat(height, width, CV_8UC1);
-                cv::cvtColor(image, mImage, cv::COLOR_BGR5652GRAY);
-                image.release();
+                luma.copyTo(mPyramid[0]);
             }
+            buildPyramid();
+            setOrder(count == TASK_COUNT ? order : nullptr);
+            resetCancelled();
         }
 
-        ~DocumentSkewDetectorCanny() override { mImage.release(); }
+        /**
+         * 亮度平面转灰度图
+         * 亮度平面本身即为灰度图，直接包装不做转换；需要缩小时在原生层以区域插值缩小，否则复制一份以脱离外部缓冲区。
+         * @param data 亮度平面数据
+         * @param width 宽
+         * @param height 高
+         * @param rowStride 行跨度
+         * @param targetWidth 目标宽
+         * @param targetHeight 目标高
+         * @return 灰度图
+         */
+        static cv::Mat fromLuma(void *data, int width, int height, int rowStride,
+                                int targetWidth, int targetHeight) {
+            const cv::Mat luma(height, width, CV_8UC1, data, (size_t) rowStride);
+            if (isShrink(width, height, targetWidth, targetHeight)) {
+                cv::Mat gray;
+                cv::resize(luma, gray, cv::Size(targetWidth, targetHeight), 0, 0, cv::INTER_AREA);
+                return gray;
+            }
+            return luma.clone();
+        }
+
+        ~DocumentSkewDetectorCanny() override {
+            mImage.release();
+            mPyramid.clear();
+            mEnhanced.release();
+        }
+
+        /**
+         * 设置预检阈值
+         * 检测前先在缩略图上估计画面中存在文档的可能性，低于阈值时直接判定未检测到文档，不再执行参数组检测。
+         * @param threshold 预检阈值，范围为 0 到 1，不大于 0 时跳过预检
+         */
+        void setPreCheckThreshold(float threshold) {
+            mPreCheckThreshold = threshold;
+        }
 
-        bool detect(int &ltx, int &lty, int &rtx, int &rty,
-                    int &lbx, int &lby, int &rbx, int &rby) const override {
-            if (detect(mImage, ltx, lty, rtx, rty, lbx, lby, rbx, rby)) {
-                return true;
+        /**
+         * 设置是否复用
+         * 复用的检测器（视频帧或批量图片，以 reset 传入新的检测图）被取消后保留工作缓冲区，供下一次检测复用；
+         * 否则被取消后立即释放工作缓冲区，不必等到检测器释放。
+         * @param reusable 是否复用
+         */
+        void setReusable(bool reusable) {
+            mReusable = reusable;
+        }
+
+        /**
+         * 获取任务数
+         * @return 任务数
+         */
+        static int getTaskCount() {
+            return TASK_COUNT;
+        }
+
+        /**
+         * 获取最近一次检测的任务记录
+         * 以任务序号为下标，供外部按参数组统计成功率与单个任务的耗时，不可与检测同时调用。
+         * @param states 待输出的执行情况，长度为任务数
+         * @param elapsedTimes 待输出的耗时（纳秒），长度为任务数，未执行的任务为 0
+         */
+        void getTaskRecords(int *states, int64_t *elapsedTimes) const {
+            for (int i = 0; i < TASK_COUNT; i++) {
+                states[i] = mRecords[i].state;
+                elapsedTimes[i] = mRecords[i].elapsed;
             }
-            // 对灰度图做一次直方图均衡化增强对比度再进行一轮检测
-            cv::Mat enhanced;
-            cv::equalizeHist(mImage, enhanced);
-            return detect(enhanced, ltx, lty, rtx, rty, lbx, lby, rbx, rby);
+        }
+
+        /**
+         * 检测
+         * 工作缓冲区在多次检测间复用，同一检测器不可在多个线程中同时检测。
+         */
+        bool detect(float points[8], float &confidence, int &parameter,
+                    const Clock::time_point &deadline, bool &timedOut) const override {
+            timedOut = false;
+            mRecords.fill(TaskRecord());
+            for (Worker &worker: mWorkers) {
+                worker.fallbackScore = -1;
+                worker.fallbackTask = -1;
+            }
+            if (checkCancelled()) {
+                return false;
+            }
+            if (mPreCheckThreshold > 0 && preCheck(mImage) < mPreCheckThreshold) {
+                // 画面中大概率没有文档
+                return false;
+            }
+            float score;
+            if (mThreads > 1) {
+                parameter = detectParallel(points, score, deadline, timedOut);
+            } else {
+                parameter = detectSequence(points, score, deadline, timedOut);
+            }
+            if (parameter < 0 || checkCancelled()) {
+                return false;
+            }
+            // 预处理越重（高斯模糊越大、经直方图均衡化）的任务结果越不可靠，与任务的执行顺序无关
+            confidence = score * (1 - PREPROCESS_PENALTY * getPreprocessWeight(parameter));
+            if (mPyramid.size() > 1) {
+                // 粗检测层得到的边框逐层放大并精修到原图
+                refineByPyramid(points, deadline, timedOut);
+            }
+            return !checkCancelled();
         }
 
     private:
+        // 金字塔精修时角点的搜索半径
+        static const int PYRAMID_REFINE_WINDOW = 5;
+        // 预检缩略图的最长边
+        static const int PRE_CHECK_SIZE = 64;
+        // 检测图，金字塔模式下为最小的一层
         cv::Mat mImage;
+        // 图像金字塔，第一层为原尺寸灰度图
+        std::vector<cv::Mat> mPyramid;
+        const int mThreads;
+        const int mPyramidSize;
+        float mPreCheckThreshold = 0;
+        bool mReusable = false;
+
+        // 高斯模糊大小种数
+        static const int BLUR_SIZE_COUNT = 4;
+        // 参数组数：边框检测第二阈值 × 高斯模糊大小
+        static const int PARAMETER_COUNT = 12;
+        // 任务数：原图与直方图均衡化图各执行一遍全部参数组
+        static const int TASK_COUNT = PARAMETER_COUNT * 2;
+        // 预处理最重的任务检测成功时置信度的折减比例
+        static constexpr float PREPROCESS_PENALTY = 0.3f;
+        // 任务执行顺序，元素为任务序号，小于 PARAMETER_COUNT 的作用于原图，其余作用于直方图均衡化图
+        std::array<int, TASK_COUNT> mOrder;
+
+        /**
+         * 高斯模糊缓存
+         * 同一检测图的每种高斯模糊只计算一次，供所有边框检测阈值复用，可多线程共用。
+         * 重置后保留已分配的内存，下一次检测在原内存上覆盖。
+         */
+        class BlurCache {
+        public:
+            void reset(const cv::Mat &image) {
+                mImage = &image;
+                for (bool &ready: mReady) {
+                    ready = false;
+                }
+            }
+
+            const cv::Mat &get(int blurIndex, int blurSize) {
+                std::lock_guard<std::mutex> lock(mMutexes[blurIndex]);
+                if (!mReady[blurIndex]) {
+                    cv::GaussianBlur(*mImage, mBlurs[blurIndex], cv::Size(blurSize, blurSize), 0);
+                    mReady[blurIndex] = true;
+                }
+                return mBlurs[blurIndex];
+            }
+
+            /**
+             * 释放已分配的内存
+             */
+            void release() {
+                for (int i = 0; i < BLUR_SIZE_COUNT; i++) {
+                    mBlurs[i].release();
+                    mReady[i] = false;
+                }
+            }
+
+        private:
+            const cv::Mat *mImage = nullptr;
+            cv::Mat mBlurs[BLUR_SIZE_COUNT];
+            bool mReady[BLUR_SIZE_COUNT] = {};
+            std::mutex mMutexes[BLUR_SIZE_COUNT];
+        };
+
+        /**
+         * 检测线程的工作缓冲区
+         */
+        struct Worker {
+            // 边缘图
+            cv::Mat edges;
+            // 轮廓容器
+            Workspace workspace;
+            // 本次检测中未达标的最优备选边框，超时且没有任务检测成功时使用
+            float fallback[8];
+            float fallbackScore = -1;
+            int fallbackTask = -1;
+        };
+
+        /**
+         * 任务记录
+         */
+        struct TaskRecord {
+            int state = TASK_SKIPPED;
+            // 耗时（纳秒），仅含该任务自身的高斯模糊（未命中缓存时）、边缘检测与边框计算
+            int64_t elapsed = 0;
+        };
+
+        // 直方图均衡化图
+        mutable cv::Mat mEnhanced;
+        mutable BlurCache mOriginalCache;
+        mutable BlurCache mEnhancedCache;
+        // 每个检测线程一份工作缓冲区
+        mutable std::vector<Worker> mWorkers;
+        // 金字塔精修的角点
+        mutable std::vector<cv::Point2f> mCorners;
+        mutable std::vector<cv::Point2f> mRefined;
+        // 最近一次检测的任务记录，以任务序号为下标，各任务只由领取它的线程写入
+        mutable std::array<TaskRecord, TASK_COUNT> mRecords;
+
+        /**
+         * 判断是否已取消
+         * 已取消且检测器不复用时释放工作缓冲区：直方图均衡化图、高斯模糊、边缘图、轮廓容器及金字塔精修的角点。
+         * @return 已取消时返回true
+         */
+        bool checkCancelled() const {
+            if (!isCancelled()) {
+                return false;
+            }
+            if (!mReusable) {
+                mEnhanced.release();
+                mOriginalCache.release();
+                mEnhancedCache.release();
+                for (Worker &worker: mWorkers) {
+                    worker.edges.release();
+                    std::vector<std::vector<cv::Point>>().swap(worker.workspace.contours);
+                    std::vector<std::pair<double, size_t>>().swap(worker.workspace.areas);
+                }
+                std::vector<cv::Point2f>().swap(mCorners);
+                std::vector<cv::Point2f>().swap(mRefined);
+            }
+            return true;
+        }
+
+        static bool isShrink(int width, int height, int targetWidth, int targetHeight) {
+            return targetWidth > 0 && targetHeight > 0
+                   && (targetWidth < width || targetHeight < height);
+        }
+
+        /**
+         * 构建图像金字塔
+         * 以第一层为基础逐层缩小一半，直到最长边接近目标尺寸；已有的层在原内存上覆盖。
+         */
+        void buildPyramid() {
+            size_t level = 1;
+            if (mPyramidSize > 0) {
+                while (std::max(mPyramid[level - 1].cols, mPyramid[level - 1].rows)
+                       > mPyramidSize * 3 / 2) {
+                    if (mPyramid.size() <= level) {
+                        mPyramid.emplace_back();
+                    }
+                    cv::pyrDown(mPyramid[level - 1], mPyramid[level]);
+                    level++;
+                }
+            }
+            mPyramid.resize(level);
+            mImage = mPyramid.back();
+        }
 
-        static cv::Mat handleImage(const cv::Mat &image, int blurSize, int cannyThreshold2) {
-            // 第一步高斯模糊
-            cv::Mat blur;
-            cv::GaussianBlur(image, blur, cv::Size(blurSize, blurSize), 0);
-            // 第二步边缘检测
-            cv::Mat canny;
-            cv::Canny(blur, canny, 50, cannyThreshold2);
-            // 第三步二值化
-            cv::Mat threshold;
-            cv::threshold(canny, threshold, 0, 255, cv::THRESH_OTSU);
-            return threshold;
-        }
-
-        static bool detect(const cv::Mat &image, int &ltx, int &lty, int &rtx, int &rty,
-                           int &lbx, int &lby, int &rbx, int &rby) {
-            // 使用不同的高斯模糊大小与边框检测第二阈值进行边框检测
+        /**
+         * 获取参数，序号越小优先级越高
+         * @param index 参数序号
+         * @param blurIndex 待输出的高斯模糊序号
+         * @param blurSize 待输出的高斯模糊大小
+         * @param cannyThreshold2 待输出的边框检测第二阈值
+         */
+        static void getParameter(int index, int &blurIndex, int &blurSize, int &cannyThreshold2) {
             const int cannyThreshold2s[] = {100, 150, 300};
             const int blurSizes[] = {3, 7, 11, 15};
-            for (int cannyThreshold2: cannyThreshold2s) {
-                for (int blurSize: blurSizes) {
-                    if (calculateBounds(handleImage(image, blurSize, cannyThreshold2),
-                                        ltx, lty, rtx, rty, lbx, lby, rbx, rby)) {
-                        return true;
+            cannyThreshold2 = cannyThreshold2s[index / BLUR_SIZE_COUNT];
+            blurIndex = index % BLUR_SIZE_COUNT;
+            blurSize = blurSizes[blurIndex];
+        }
+
+        /**
+         * 获取任务的预处理权重
+         * 高斯模糊大小与直方图均衡化各占一半，最小的高斯模糊作用于原图时为 0，最大的高斯模糊作用于均衡化图时为 1。
+         * 边框检测阈值不改变检测图，不计入。
+         * @param task 任务序号
+         * @return 预处理权重，范围为 0 到 1
+         */
+        static float getPreprocessWeight(int task) {
+            int blurIndex, blurSize, cannyThreshold2;
+            getParameter(task % PARAMETER_COUNT, blurIndex, blurSize, cannyThreshold2);
+            const float blur = (float) blurIndex / (BLUR_SIZE_COUNT - 1);
+            const float equalized = task < PARAMETER_COUNT ? 0 : 1;
+            return (blur + equalized) * 0.5f;
+        }
+
+        /**
+         * 执行任务并记录执行情况与耗时
+         * @param task 任务序号
+         * @param worker 工作缓冲区
+         * @param points 待输出的边框点
+         * @param score 待输出的候选得分
+         * @return 检测成功时返回true
+         */
+        bool runTask(int task, Worker &worker, float points[8], float &score) const {
+            const Clock::time_point start = Clock::now();
+            BlurCache &cache = task < PARAMETER_COUNT ? mOriginalCache : mEnhancedCache;
+            const bool detected = calculateBounds(
+                    handleImage(cache, task % PARAMETER_COUNT, worker.edges),
+                    isRefine(), points, score, worker.workspace);
+            TaskRecord &record = mRecords[task];
+            record.state = detected ? TASK_SUCCEEDED : TASK_FAILED;
+            record.elapsed = std::chrono::duration_cast<std::chrono::nanoseconds>(
+                    Clock::now() - start).count();
+            return detected;
+        }
+
+        /**
+         * 保留未达标的备选边框
+         * 须紧接在检测失败的 runTask 之后调用，得分高于该线程已有备选时替换。
+         * @param task 任务序号
+         * @param worker 工作缓冲区
+         */
+        static void keepFallback(int task, Worker &worker) {
+            float points[8];
+            float score;
+            if (calculateFallback(worker.edges, worker.workspace, points, score)
+                && score > worker.fallbackScore) {
+                std::copy(points, points + 8, worker.fallback);
+                worker.fallbackScore = score;
+                worker.fallbackTask = task;
+            }
+        }
+
+        /**
+         * 取得分最高的备选边框
+         * @param points 待输出的边框点
+         * @param score 待输出的备选得分
+         * @return 备选边框对应的任务序号，没有备选时返回 -1
+         */
+        int takeFallback(float points[8], float &score) const {
+            const Worker *best = nullptr;
+            for (const Worker &worker: mWorkers) {
+                if (worker.fallbackTask >= 0
+                    && (best == nullptr || worker.fallbackScore > best->fallbackScore)) {
+                    best = &worker;
+                }
+            }
+            if (best == nullptr) {
+                return -1;
+            }
+            std::copy(best->fallback, best->fallback + 8, points);
+            score = best->fallbackScore;
+            return best->fallbackTask;
+        }
+
+        static const cv::Mat &handleImage(BlurCache &cache, int index, cv::Mat &edges) {
+            int blurIndex, blurSize, cannyThreshold2;
+            getParameter(index, blurIndex, blurSize, cannyThreshold2);
+            // 第一步高斯模糊（复用缓存）
+            const cv::Mat &blur = cache.get(blurIndex, blurSize);
+            // 第二步边缘检测，输出已是 0 与 255 的二值图，无需再二值化
+            cv::Canny(blur, edges, 50, cannyThreshold2);
+            return edges;
+        }
+
+        /**
+         * 预检
+         * 在缩略图上计算梯度能量、边缘与中心区域的灰度直方图差异以及单次边缘检测的边缘密度，
+         * 三者均很低的画面（如空桌面、纯色背景）基本不可能检测到文档。
+         * @param image 灰度图
+         * @return 存在文档的可能性，范围为 0 到 1
+         */
+        static float preCheck(const cv::Mat &image) {
+            cv::Mat thumbnail;
+            const double scale = std::min(1.0, (double) PRE_CHECK_SIZE /
+                                               std::max(image.cols, image.rows));
+            cv::resize(image, thumbnail, cv::Size(), scale, scale, cv::INTER_AREA);
+            if (thumbnail.cols < 8 || thumbnail.rows < 8) {
+                return 1;
+            }
+            // 梯度能量：平均梯度幅值
+            cv::Mat dx, dy;
+            cv::Sobel(thumbnail, dx, CV_16S, 1, 0);
+            cv::Sobel(thumbnail, dy, CV_16S, 0, 1);
+            cv::Mat magnitude;
+            cv::addWeighted(cv::abs(dx), 1, cv::abs(dy), 1, 0, magnitude, CV_32F);
+            const double energy = std::min(1.0, cv::mean(magnitude)[0] / 20);
+            // 边缘与中心对比：文档通常位于画面中部，与周边背景的灰度分布不同
+            cv::Mat border(thumbnail.size(), CV_8UC1, cv::Scalar(255));
+            const cv::Rect center(thumbnail.cols / 4, thumbnail.rows / 4,
+                                  thumbnail.cols / 2, thumbnail.rows / 2);
+            border(center).setTo(0);
+            const int bins = 16;
+            const float range[] = {0, 256};
+            const float *ranges[] = {range};
+            const int channels[] = {0};
+            cv::Mat borderHist, centerHist;
+            cv::calcHist(&thumbnail, 1, channels, border, borderHist, 1, &bins, ranges);
+            cv::Mat centerImage = thumbnail(center);
+            cv::calcHist(&centerImage, 1, channels, cv::Mat(), centerHist, 1, &bins, ranges);
+            cv::normalize(borderHist, borderHist, 1, 0, cv::NORM_L1);
+            cv::normalize(centerHist, centerHist, 1, 0, cv::NORM_L1);
+            const double contrast = std::min(1.0, cv::compareHist(borderHist, centerHist,
+                                                                  cv::HISTCMP_BHATTACHARYYA));
+            // 边缘密度：单次边缘检测
+            cv::Mat edges;
+            cv::Canny(thumbnail, edges, 50, 150);
+            const double density = std::min(1.0, cv::countNonZero(edges) /
+                                                 (edges.total() * 0.03));
+            return (float) (0.4 * energy + 0.3 * contrast + 0.3 * density);
+        }
+
+        void setOrder(const int *order) {
+            bool valid = order != nullptr;
+            if (valid) {
+                // 必须是全部任务序号的排列
+                std::array<bool, TASK_COUNT> used{};
+                for (int i = 0; i < TASK_COUNT && valid; i++) {
+                    const int task = order[i];
+                    valid = task >= 0 && task < TASK_COUNT && !used[task];
+                    if (valid) {
+                        used[task] = true;
                     }
                 }
             }
-            return false;
+            for (int i = 0; i < TASK_COUNT; i++) {
+                mOrder[i] = valid ? order[i] : i;
+            }
+        }
+
+        /**
+         * 按任务顺序依次检测
+         * 第一个任务总会执行；超时后不再开始新的任务，返回已执行任务中得分最高的未达标备选边框。
+         * @param points 待输出的边框点
+         * @param score 待输出的候选得分
+         * @param deadline 截止时间
+         * @param timedOut 待输出的是否超时
+         * @return 检测成功（或超时时备选边框）的任务序号，失败时返回 -1
+         */
+        int detectSequence(float points[8], float &score,
+                           const Clock::time_point &deadline, bool &timedOut) const {
+            Worker &worker = mWorkers[0];
+            bool enhanced = false;
+            mOriginalCache.reset(mImage);
+            mEnhancedCache.reset(mEnhanced);
+            for (int i = 0; i < TASK_COUNT; i++) {
+                if (isCancelled()) {
+                    // 已取消，工作缓冲区由 detect 按是否复用决定保留或释放
+                    return -1;
+                }
+                if (i > 0 && Clock::now() >= deadline) {
+                    // 超时，不再开始新的一轮，尽力返回备选边框
+                    timedOut = true;
+                    return takeFallback(points, score);
+                }
+                const int task = mOrder[i];
+                if (task >= PARAMETER_COUNT && !enhanced) {
+                    // 对灰度图做一次直方图均衡化增强对比度，仅在首次需要时计算
+                    cv::equalizeHist(mImage, mEnhanced);
+                    enhanced = true;
+                }
+                if (runTask(task, worker, points, score)) {
+                    return task;
+                }
+                keepFallback(task, worker);
+            }
+            return -1;
+        }
+
+        /**
+         * 多线程检测
+         * 原图与直方图均衡化图的全部参数按任务顺序排成队列，工作线程按序领取任务；
+         * 一旦某个任务检测成功，顺序更靠后的任务不再执行，最终取顺序最靠前的成功结果，与单线程检测结果一致。
+         * 超时后不再领取新任务，取已完成任务中顺序最靠前的成功结果，没有成功结果时取得分最高的未达标备选边框。
+         * @return 检测成功（或超时时备选边框）的任务序号，失败时返回 -1
+         */
+        int detectParallel(float points[8], float &score,
+                           const Clock::time_point &deadline, bool &timedOut) const {
+            cv::equalizeHist(mImage, mEnhanced);
+            mOriginalCache.reset(mImage);
+            mEnhancedCache.reset(mEnhanced);
+            const int count = TASK_COUNT;
+            std::array<std::array<float, 8>, TASK_COUNT> results;
+            std::array<float, TASK_COUNT> scores;
+            std::atomic<int> next(0);
+            std::atomic<int> found(count);
+            std::atomic<bool> expired(false);
+            auto worker = [&](Worker &buffer) {
+                while (true) {
+                    const int index = next.fetch_add(1);
+                    if (index >= found.load() || isCancelled()) {
+                        // 已有顺序更靠前的任务检测成功或已取消，剩余任务取消
+                        return;
+                    }
+                    if (index > 0 && Clock::now() >= deadline) {
+                        // 超时，不再领取新任务
+                        expired.store(true);
+                        return;
+                    }
+                    if (runTask(mOrder[index], buffer, results[index].data(), scores[index])) {
+                        int current = found.load();
+                        while (index < current && !found.compare_exchange_weak(current, index)) {
+                        }
+                    } else {
+                        keepFallback(mOrder[index], buffer);
+                    }
+                }
+            };
+            std::vector<std::thread> workers;
+            workers.reserve((size_t) mThreads - 1);
+            for (int i = 1; i < mThreads; i++) {
+                workers.emplace_back(worker, std::ref(mWorkers[i]));
+            }
+            worker(mWorkers[0]);
+            for (std::thread &thread: workers) {
+                thread.join();
+            }
+            timedOut = expired.load();
+            const int index = found.load();
+            if (index >= count) {
+                return timedOut ? takeFallback(points, score) : -1;
+            }
+            std::copy(results[index].begin(), results[index].end(), points);
+            score = scores[index];
+            return mOrder[index];
+        }
+
+        /**
+         * 金字塔精修
+         * 将上一层的角点映射到下一层，仅在角点附近的小窗口内做亚像素角点精修，直到原尺寸层。
+         * 精修结果偏离预测位置超出搜索半径时视为精修失败，保留预测位置。
+         * 超时后剩余各层只做坐标放大，不再精修；取消后直接返回。
+         */
+        void refineByPyramid(float points[8], const Clock::time_point &deadline,
+                             bool &timedOut) const {
+            std::vector<cv::Point2f> &corners = mCorners;
+            corners.clear();
+            for (int i = 0; i < 4; i++) {
+                corners.emplace_back(points[i * 2], points[i * 2 + 1]);
+            }
+            const cv::TermCriteria criteria(cv::TermCriteria::EPS + cv::TermCriteria::COUNT,
+                                            20, 0.05);
+            for (int level = (int) mPyramid.size() - 2; level >= 0; level--) {
+                const cv::Mat &image = mPyramid[level];
+                const cv::Mat &upper = mPyramid[level + 1];
+                const float scaleX = (float) image.cols / (float) upper.cols;
+                const float scaleY = (float) image.rows / (float) upper.rows;
+                for (cv::Point2f &corner: corners) {
+                    corner.x = std::min(std::max(corner.x * scaleX, 0.f), image.cols - 1.f);
+                    corner.y = std::min(std::max(corner.y * scaleY, 0.f), image.rows - 1.f);
+                }
+                if (isCancelled()) {
+                    return;
+                }
+                if (Clock::now() >= deadline) {
+                    timedOut = true;
+                    continue;
+                }
+                std::vector<cv::Point2f> &refined = mRefined;
+                refined.assign(corners.begin(), corners.end());
+                cv::cornerSubPix(image, refined,
+                                 cv::Size(PYRAMID_REFINE_WINDOW, PYRAMID_REFINE_WINDOW),
+                                 cv::Size(-1, -1), criteria);
+                for (size_t i = 0; i < corners.size(); i++) {
+                    const cv::Point2f offset = refined[i] - corners[i];
+                    if (std::abs(offset.x) <= PYRAMID_REFINE_WINDOW
+                        && std::abs(offset.y) <= PYRAMID_REFINE_WINDOW
+                        && refined[i].x >= 0 && refined[i].x <= image.cols - 1
+                        && refined[i].y >= 0 && refined[i].y <= image.rows - 1) {
+                        corners[i] = refined[i];
+                    }
+                }
+            }
+            for (int i = 0; i < 4; i++) {
+                points[i * 2] = corners[i].x;
+                points[i * 2 + 1] = corners[i].y;
+            }
         }
     };
 }
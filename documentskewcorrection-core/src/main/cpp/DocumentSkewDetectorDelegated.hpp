@@ -35,24 +35,51 @@ namespace DR {
             mImage = cv::Mat(height, width, CV_8UC1, mData);
         }
 
+        /**
+         * 构造
+         * 直接包装直接缓冲区的数据，既不复制也不固定 Java 数组，仅持有缓冲区的全局引用防止其被回收。
+         * @param env JNIEnv
+         * @param width 宽
+         * @param height 高
+         * @param buffer 直接缓冲区
+         */
+        explicit DocumentSkewDetectorDelegated(JNIEnv *env,
+                                               jint width, jint height, jobject buffer) {
+            env->GetJavaVM(&vm);
+            mBuffer = env->NewGlobalRef(buffer);
+            mImage = cv::Mat(height, width, CV_8UC1, env->GetDirectBufferAddress(mBuffer));
+        }
+
         ~DocumentSkewDetectorDelegated() override {
             mImage.release();
             JNIEnv *env = nullptr;
             vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6);
-            env->ReleaseByteArrayElements(mPixels, mData, 0);
-            env->DeleteGlobalRef(mPixels);
+            if (mPixels != nullptr) {
+                env->ReleaseByteArrayElements(mPixels, mData, 0);
+                env->DeleteGlobalRef(mPixels);
+            }
+            if (mBuffer != nullptr) {
+                env->DeleteGlobalRef(mBuffer);
+            }
         }
 
-        bool detect(int &ltx, int &lty, int &rtx, int &rty,
-                    int &lbx, int &lby, int &rbx, int &rby) const override {
-            return calculateBounds(mImage, ltx, lty, rtx, rty, lbx, lby, rbx, rby);
+        bool detect(float points[8], float &confidence, int &parameter,
+                    const Clock::time_point &/*deadline*/, bool &timedOut) const override {
+            // 只有一轮处理，不检查截止时间
+            timedOut = false;
+            if (isCancelled()) {
+                return false;
+            }
+            parameter = -1;
+            return calculateBounds(mImage, isRefine(), points, confidence);
         }
 
     private:
         cv::Mat mImage;
         JavaVM *vm;
-        jbyteArray mPixels;
-        jbyte *mData;
+        jbyteArray mPixels = nullptr;
+        jbyte *mData = nullptr;
+        jobject mBuffer = nullptr;
     };
 }
 
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+// 使用直线检测的检测器（位图处理逻辑）
+// Created by Alex on 2025/6/3.
+//
+
+#ifndef DOCUMENTSKEWCORRECTION_DOCUMENTSKEWDETECTORLINES_HPP
+#define DOCUMENTSKEWCORRECTION_DOCUMENTSKEWDETECTORLINES_HPP
+
+#include "DocumentSkewDetector.hpp"
+
+namespace DR {
+    class DocumentSkewDetectorLines final : public DocumentSkewDetector {
+
+    public:
+        explicit DocumentSkewDetectorLines(int width, int height, void *pixels, bool alpha) {
+            mImage = toGray(width, height, pixels, alpha);
+        }
+
+        ~DocumentSkewDetectorLines() override { mImage.release(); }
+
+        bool detect(float points[8], float &confidence, int &parameter,
+                    const Clock::time_point &/*deadline*/, bool &timedOut) const override {
+            // 只有一轮处理，不检查截止时间
+            timedOut = false;
+            if (isCancelled()) {
+                return false;
+            }
+            // 第一步高斯模糊
+            cv::Mat blur;
+            cv::GaussianBlur(mImage, blur, cv::Size(5, 5), 0);
+            // 第二步边缘检测
+            cv::Mat edges;
+            cv::Canny(blur, edges, 50, 150);
+            blur.release();
+            if (isCancelled()) {
+                return false;
+            }
+            // 第三步概率霍夫直线检测，只执行一次
+            const int size = std::max(mImage.cols, mImage.rows);
+            std::vector<cv::Vec4i> segments;
+            cv::HoughLinesP(edges, segments, 1, CV_PI / 180, std::max(20, size / 10),
+                            std::max(10, size / 10), std::max(2, size / 50));
+            if (segments.size() < 3) {
+                return false;
+            }
+            // 第四步按方向与位置聚类为直线
+            std::vector<Line> horizontals;
+            std::vector<Line> verticals;
+            const float centerX = mImage.cols * 0.5f;
+            const float centerY = mImage.rows * 0.5f;
+            for (const cv::Vec4i &segment: segments) {
+                const float dx = (float) (segment[2] - segment[0]);
+                const float dy = (float) (segment[3] - segment[1]);
+                const float length = std::sqrt(dx * dx + dy * dy);
+                if (std::abs(dx) >= std::abs(dy)) {
+                    // 近水平直线：y = slope * (x - centerX) + position
+                    const float slope = dy / dx;
+                    const float position = segment[1] + slope * (centerX - segment[0]);
+                    cluster(horizontals, slope, position, length, size);
+                } else {
+                    // 近竖直直线：x = slope * (y - centerY) + position
+                    const float slope = dx / dy;
+                    const float position = segment[0] + slope * (centerY - segment[1]);
+                    cluster(verticals, slope, position, length, size);
+                }
+            }
+            // 第五步选出四条主边，缺失一条时以图片边界代替
+            Line top, bottom, left, right;
+            int found = 0;
+            if (selectEdge(horizontals, centerY, true, top)) {
+                found++;
+            } else {
+                top = Line(0, 0, 0);
+            }
+            if (selectEdge(horizontals, centerY, false, bottom)) {
+                found++;
+            } else {
+                bottom = Line(0, mImage.rows - 1.f, 0);
+            }
+            if (selectEdge(verticals, centerX, true, left)) {
+                found++;
+            } else {
+                left = Line(0, 0, 0);
+            }
+            if (selectEdge(verticals, centerX, false, right)) {
+                found++;
+            } else {
+                right = Line(0, mImage.cols - 1.f, 0);
+            }
+            if (found < 3) {
+                return false;
+            }
+            // 第六步求交点
+            cv::Point2f corners[4];
+            if (!intersect(top, left, centerX, centerY, corners[0])
+                || !intersect(top, right, centerX, centerY, corners[1])
+                || !intersect(bottom, right, centerX, centerY, corners[2])
+                || !intersect(bottom, left, centerX, centerY, corners[3])) {
+                return false;
+            }
+            const float marginX = mImage.cols * 0.05f;
+            const float marginY = mImage.rows * 0.05f;
+            for (cv::Point2f &corner: corners) {
+                if (corner.x < -marginX || corner.x > mImage.cols - 1 + marginX
+                    || corner.y < -marginY || corner.y > mImage.rows - 1 + marginY) {
+                    // 交点远在图片外，不是文档
+                    return false;
+                }
+                corner.x = std::min(std::max(corner.x, 0.f), mImage.cols - 1.f);
+                corner.y = std::min(std::max(corner.y, 0.f), mImage.rows - 1.f);
+            }
+            std::vector<cv::Point2f> quad(corners, corners + 4);
+            const double imageArea = mImage.cols * mImage.rows;
+            const double area = cv::contourArea(quad);
+            if (!cv::isContourConvex(quad) || area < imageArea / 20.0) {
+                return false;
+            }
+            if (isRefine()) {
+                refineBounds(edges, corners);
+            }
+            // 置信度：四条边的边缘支撑度与面积占比，以画面边界代替的边会拉低支撑度
+            double support = 0;
+            for (int k = 0; k < 4; k++) {
+                support += sideSupport(edges, corners[k], corners[(k + 1) % 4]);
+            }
+            support /= 4;
+            confidence = (float) (0.7 * support + 0.3 * std::sqrt(std::min(1.0, area / imageArea)));
+            parameter = -1;
+            toPoints(corners, points);
+            return true;
+        }
+
+    private:
+        /**
+         * 直线，近水平时为 y = slope * (x - centerX) + position，近竖直时为 x = slope * (y - centerY) + position
+         */
+        struct Line {
+            float slope;
+            float position;
+            // 支撑该直线的线段总长度
+            float weight;
+
+            Line() : slope(0), position(0), weight(0) {}
+
+            Line(float slope, float position, float weight)
+                    : slope(slope), position(position), weight(weight) {}
+        };
+
+        cv::Mat mImage;
+
+        static void cluster(std::vector<Line> &lines, float slope, float position, float length,
+                            int size) {
+            // 方向相差约 5 度以内且位置相差 2% 以内视为同一直线，按长度加权合并
+            const float slopeTolerance = 0.09f;
+            const float positionTolerance = size * 0.02f;
+            for (Line &line: lines) {
+                if (std::abs(line.slope - slope) < slopeTolerance
+                    && std::abs(line.position - position) < positionTolerance) {
+                    const float weight = line.weight + length;
+                    line.slope = (line.slope * line.weight + slope * length) / weight;
+                    line.position = (line.position * line.weight + position * length) / weight;
+                    line.weight = weight;
+                    return;
+                }
+            }
+            lines.emplace_back(slope, position, length);
+        }
+
+        /**
+         * 选择边
+         * 在中心一侧的直线中，取支撑长度不低于最强直线一半的最外侧直线。
+         */
+        static bool selectEdge(const std::vector<Line> &lines, float center, bool before,
+                               Line &edge) {
+            float maxWeight = 0;
+            for (const Line &line: lines) {
+                if ((line.position < center) == before) {
+                    maxWeight = std::max(maxWeight, line.weight);
+                }
+            }
+            if (maxWeight <= 0) {
+                return false;
+            }
+            bool selected = false;
+            for (const Line &line: lines) {
+                if ((line.position < center) != before || line.weight < maxWeight * 0.5f) {
+                    continue;
+                }
+                if (!selected || (before ? line.position < edge.position
+                                         : line.position > edge.position)) {
+                    edge = line;
+                    selected = true;
+                }
+            }
+            return selected;
+        }
+
+        static bool intersect(const Line &horizontal, const Line &vertical,
+                              float centerX, float centerY, cv::Point2f &point) {
+            // y = a * x + b，x = c * y + d
+            const float a = horizontal.slope;
+            const float b = horizontal.position - a * centerX;
+            const float c = vertical.slope;
+            const float d = vertical.position - c * centerY;
+            const float denominator = 1 - a * c;
+            if (std::abs(denominator) < 1e-6f) {
+                return false;
+            }
+            point.y = (a * d + b) / denominator;
+            point.x = c * point.y + d;
+            return true;
+        }
+    };
+}
+
+#endif //DOCUMENTSKEWCORRECTION_DOCUMENTSKEWDETECTORLINES_HPP
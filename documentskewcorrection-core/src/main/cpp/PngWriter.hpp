@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+// PNG 流式编码
+// Created by Alex on 2025/6/16.
+//
+
+#ifndef DOCUMENTSKEWCORRECTION_PNGWRITER_HPP
+#define DOCUMENTSKEWCORRECTION_PNGWRITER_HPP
+
+#include <cstring>
+#include <functional>
+#include <vector>
+#include <zlib.h>
+#include <opencv2/core/mat.hpp>
+
+namespace DR {
+
+    /**
+     * PNG 流式编码
+     * 逐行写入，每行以 Up 滤波后送入 zlib 压缩，压缩输出满一块即作为一个 IDAT 块写出，
+     * 内存只有一行的滤波缓冲与一块压缩输出，与图片尺寸无关。
+     * 支持 8 位 RGBA（未预乘）、8 位灰度与 1 位灰度（二值化，非 0 为白）。
+     */
+    class PngWriter {
+
+    public:
+        // 写出数据，写出失败时返回false
+        typedef std::function<bool(const unsigned char *data, size_t size)> Output;
+
+        explicit PngWriter(Output output) : mOutput(std::move(output)) {}
+
+        ~PngWriter() {
+            if (mStarted) {
+                deflateEnd(&mStream);
+            }
+        }
+
+        /**
+         * 开始写入
+         * @param width 宽
+         * @param height 高
+         * @param channels 通道数，4 为 RGBA，1 为灰度
+         * @param binary 单通道时是否以 1 位灰度写入
+         * @return 成功时返回true
+         */
+        bool begin(int width, int height, int channels, bool binary) {
+            static const unsigned char SIGNATURE[] = {137, 80, 78, 71, 13, 10, 26, 10};
+            if (mStarted || !mOutput(SIGNATURE, sizeof(SIGNATURE))) {
+                return false;
+            }
+            mWidth = width;
+            mChannels = channels;
+            mBinary = channels == 1 && binary;
+            unsigned char header[13];
+            putUInt32(header, (unsigned int) width);
+            putUInt32(header + 4, (unsigned int) height);
+            header[8] = mBinary ? 1 : 8;// 位深
+            header[9] = channels == 4 ? 6 : 0;// 颜色类型：RGBA 或灰度
+            header[10] = 0;// 压缩方式
+            header[11] = 0;// 滤波方式
+            header[12] = 0;// 不隔行
+            if (!writeChunk("IHDR", header, sizeof(header))) {
+                return false;
+            }
+            std::memset(&mStream, 0, sizeof(mStream));
+            if (deflateInit(&mStream, Z_DEFAULT_COMPRESSION) != Z_OK) {
+                return false;
+            }
+            mStarted = true;
+            const size_t rowSize = mBinary ? (size_t) (width + 7) / 8
+                                           : (size_t) width * channels;
+            mPrevious.assign(rowSize, 0);
+            mFiltered.assign(rowSize + 1, 0);
+            mBuffer.resize(BUFFER_SIZE);
+            mBuffered = 0;
+            return true;
+        }
+
+        /**
+         * 写入若干行
+         * @param rows 行，宽与通道数须与开始写入时一致
+         * @return 成功时返回true
+         */
+        bool write(const cv::Mat &rows) {
+            if (!mStarted || rows.cols != mWidth || rows.channels() != mChannels) {
+                return false;
+            }
+            const size_t rowSize = mPrevious.size();
+            std::vector<unsigned char> packed;
+            if (mBinary) {
+                packed.resize(rowSize);
+            }
+            for (int y = 0; y < rows.rows; y++) {
+                const unsigned char *row = rows.ptr<unsigned char>(y);
+                if (mBinary) {
+                    std::fill(packed.begin(), packed.end(), 0);
+                    for (int x = 0; x < mWidth; x++) {
+                        if (row[x] != 0) {
+                            packed[x >> 3] |= (unsigned char) (0x80 >> (x & 7));
+                        }
+                    }
+                    row = packed.data();
+                }
+                // Up 滤波：与上一行逐字节相减，文档图像行间相关性强，压缩率明显高于不滤波
+                mFiltered[0] = 2;
+                for (size_t i = 0; i < rowSize; i++) {
+                    mFiltered[i + 1] = (unsigned char) (row[i] - mPrevious[i]);
+                }
+                std::memcpy(mPrevious.data(), row, rowSize);
+                if (!compress(mFiltered.data(), mFiltered.size(), Z_NO_FLUSH)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 结束写入
+         * @return 成功时返回true
+         */
+        bool end() {
+            if (!mStarted) {
+                return false;
+            }
+            const bool compressed = compress(nullptr, 0, Z_FINISH);
+            deflateEnd(&mStream);
+            mStarted = false;
+            return compressed && writeChunk("IEND", nullptr, 0);
+        }
+
+    private:
+        // 压缩输出缓冲，即每个 IDAT 块的最大长度
+        static const size_t BUFFER_SIZE = 64 * 1024;
+        const Output mOutput;
+        z_stream mStream{};
+        bool mStarted = false;
+        int mWidth = 0;
+        int mChannels = 0;
+        bool mBinary = false;
+        std::vector<unsigned char> mPrevious;
+        std::vector<unsigned char> mFiltered;
+        std::vector<unsigned char> mBuffer;
+        size_t mBuffered = 0;
+
+        static void putUInt32(unsigned char *data, unsigned int value) {
+            data[0] = (unsigned char) (value >> 24);
+            data[1] = (unsigned char) (value >> 16);
+            data[2] = (unsigned char) (value >> 8);
+            data[3] = (unsigned char) value;
+        }
+
+        bool compress(const unsigned char *data, size_t size, int flush) {
+            mStream.next_in = (Bytef *) data;
+            mStream.avail_in = (uInt) size;
+            int result;
+            do {
+                mStream.next_out = mBuffer.data() + mBuffered;
+                mStream.avail_out = (uInt) (mBuffer.size() - mBuffered);
+                result = deflate(&mStream, flush);
+                if (result == Z_STREAM_ERROR) {
+                    return false;
+                }
+                mBuffered = mBuffer.size() - mStream.avail_out;
+                if (mBuffered == mBuffer.size()
+                    || (result == Z_STREAM_END && mBuffered > 0)) {
+                    if (!writeChunk("IDAT", mBuffer.data(), mBuffered)) {
+                        return false;
+                    }
+                    mBuffered = 0;
+                }
+            } while (mStream.avail_out == 0 || (flush == Z_FINISH && result != Z_STREAM_END));
+            return true;
+        }
+
+        bool writeChunk(const char *type, const unsigned char *data, size_t size) {
+            unsigned char header[8];
+            putUInt32(header, (unsigned int) size);
+            std::memcpy(header + 4, type, 4);
+            uLong crc = crc32(0L, header + 4, 4);
+            if (size > 0) {
+                crc = crc32(crc, data, (uInt) size);
+            }
+            unsigned char footer[4];
+            putUInt32(footer, (unsigned int) crc);
+            return mOutput(header, sizeof(header))
+                   && (size == 0 || mOutput(data, size))
+                   && mOutput(footer, sizeof(footer));
+        }
+    };
+}
+
+#endif //DOCUMENTSKEWCORRECTION_PNGWRITER_HPP
@@ -2,17 +2,22 @@
 #include <android/bitmap.h>
 #include "DocumentSkewDetectorCanny.hpp"
 #include "DocumentSkewDetectorDelegated.hpp"
+#include "DocumentSkewDetectorLines.hpp"
 #include "DocumentSkewCorrector.hpp"
 
 static void DR_DocumentSkewDetector_release(JNIEnv */*env*/, jobject /*thiz*/, jlong native_prt) {
-    delete ((DR::DocumentSkewDetectorCanny *) native_prt);
+    delete ((DR::DocumentSkewDetector *) native_prt);
+}
+
+static void DR_DocumentSkewDetector_cancel(JNIEnv */*env*/, jobject /*thiz*/, jlong native_prt) {
+    ((DR::DocumentSkewDetector *) native_prt)->cancel();
 }
 
 static jboolean DR_DocumentSkewDetector_detect(JNIEnv *env, jobject /*thiz*/,
                                                jlong native_prt, jintArray points) {
     int ltx, lty, rtx, rty, lbx, lby, rbx, rby;
-    if (((DR::DocumentSkewDetectorCanny *) native_prt)->detect(ltx, lty, rtx, rty, lbx, lby, rbx,
-                                                               rby)) {
+    if (((DR::DocumentSkewDetector *) native_prt)->detect(ltx, lty, rtx, rty, lbx, lby, rbx,
+                                                          rby)) {
         jint *ps = env->GetIntArrayElements(points, JNI_FALSE);
         ps[0] = ltx;
         ps[1] = lty;
@@ -28,6 +33,57 @@ static jboolean DR_DocumentSkewDetector_detect(JNIEnv *env, jobject /*thiz*/,
     return JNI_FALSE;
 }
 
+static jboolean DR_DocumentSkewDetector_detectPrecise(JNIEnv *env, jobject /*thiz*/,
+                                                      jlong native_prt, jfloatArray points) {
+    float ltx, lty, rtx, rty, lbx, lby, rbx, rby;
+    if (((DR::DocumentSkewDetector *) native_prt)->detect(ltx, lty, rtx, rty, lbx, lby, rbx,
+                                                          rby)) {
+        jfloat *ps = env->GetFloatArrayElements(points, JNI_FALSE);
+        ps[0] = ltx;
+        ps[1] = lty;
+        ps[2] = rtx;
+        ps[3] = rty;
+        ps[4] = lbx;
+        ps[5] = lby;
+        ps[6] = rbx;
+        ps[7] = rby;
+        env->ReleaseFloatArrayElements(points, ps, 0);
+        return JNI_TRUE;
+    }
+    return JNI_FALSE;
+}
+
+static jboolean DR_DocumentSkewDetector_detectResult(JNIEnv *env, jobject /*thiz*/,
+                                                     jlong native_prt, jlong timeout,
+                                                     jfloatArray points,
+                                                     jfloatArray confidence,
+                                                     jintArray parameter,
+                                                     jbooleanArray timedOut) {
+    typedef DR::DocumentSkewDetector::Clock Clock;
+    const Clock::time_point now = Clock::now();
+    // 超时时长为 Long.MAX_VALUE 时不限时，同时避免截止时间溢出
+    const Clock::time_point deadline =
+            timeout >= std::chrono::duration_cast<std::chrono::nanoseconds>(
+                    Clock::time_point::max() - now).count()
+            ? Clock::time_point::max()
+            : now + std::chrono::duration_cast<Clock::duration>(
+                    std::chrono::nanoseconds(timeout));
+    float ps[8];
+    float c;
+    int p;
+    bool t;
+    const bool detected = ((DR::DocumentSkewDetector *) native_prt)->detect(ps, c, p, deadline, t);
+    const jboolean expired = t ? JNI_TRUE : JNI_FALSE;
+    env->SetBooleanArrayRegion(timedOut, 0, 1, &expired);
+    if (detected) {
+        env->SetFloatArrayRegion(points, 0, 8, ps);
+        env->SetFloatArrayRegion(confidence, 0, 1, &c);
+        env->SetIntArrayRegion(parameter, 0, 1, &p);
+        return JNI_TRUE;
+    }
+    return JNI_FALSE;
+}
+
 jint DR_DocumentSkewDetector_RegisterNatives(JNIEnv *env) {
     jclass clazz = env->FindClass(
             "io/github/alexmofer/documentskewcorrection/core/DocumentSkewDetector");
@@ -35,8 +91,11 @@ jint DR_DocumentSkewDetector_RegisterNatives(JNIEnv *env) {
         return JNI_ERR;
     }
     JNINativeMethod methods[] = {
-            {"DR_DocumentSkewDetector_release", "(J)V",   (void *) (DR_DocumentSkewDetector_release)},
-            {"DR_DocumentSkewDetector_detect",  "(J[I)Z", (void *) (DR_DocumentSkewDetector_detect)}
+            {"DR_DocumentSkewDetector_release",       "(J)V",   (void *) (DR_DocumentSkewDetector_release)},
+            {"DR_DocumentSkewDetector_cancel",        "(J)V",   (void *) (DR_DocumentSkewDetector_cancel)},
+            {"DR_DocumentSkewDetector_detect",        "(J[I)Z", (void *) (DR_DocumentSkewDetector_detect)},
+            {"DR_DocumentSkewDetector_detectPrecise", "(J[F)Z", (void *) (DR_DocumentSkewDetector_detectPrecise)},
+            {"DR_DocumentSkewDetector_detectResult",  "(JJ[F[F[I[Z)Z", (void *) (DR_DocumentSkewDetector_detectResult)}
     };
     const jint result = env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
     env->DeleteLocalRef(clazz);
@@ -47,7 +106,11 @@ jint DR_DocumentSkewDetector_RegisterNatives(JNIEnv *env) {
 }
 
 static jlong DR_DocumentSkewDetectorCanny_create(JNIEnv *env, jclass /*clazz*/,
-                                                 jobject image) {
+                                                 jobject image, jint targetWidth,
+                                                 jint targetHeight, jint threads,
+                                                 jint pyramidSize, jboolean refine,
+                                                 jintArray order, jfloat preCheckThreshold,
+                                                 jboolean reusable) {
     // 注意 ANDROID_BITMAP_FORMAT_RGBA_8888 格式的位图会强制作为未预乘的位图处理，传入带透明度的位图会检测不准确。
     AndroidBitmapInfo info;
     if (AndroidBitmap_getInfo(env, image, &info) != ANDROID_BITMAP_RESULT_SUCCESS) {
@@ -64,13 +127,149 @@ static jlong DR_DocumentSkewDetectorCanny_create(JNIEnv *env, jclass /*clazz*/,
         // 无法锁定像素
         return 0;
     }
+    jint *orders = nullptr;
+    jsize count = 0;
+    if (order != nullptr) {
+        orders = env->GetIntArrayElements(order, JNI_FALSE);
+        count = env->GetArrayLength(order);
+    }
     auto created = new DR::DocumentSkewDetectorCanny((int) info.width, (int) info.height, pixels,
                                                      info.format ==
-                                                     ANDROID_BITMAP_FORMAT_RGBA_8888);
+                                                     ANDROID_BITMAP_FORMAT_RGBA_8888,
+                                                     targetWidth, targetHeight,
+                                                     threads, pyramidSize, orders, count);
+    if (orders != nullptr) {
+        env->ReleaseIntArrayElements(order, orders, JNI_ABORT);
+    }
     AndroidBitmap_unlockPixels(env, image);
+    created->setRefine(refine == JNI_TRUE);
+    created->setPreCheckThreshold(preCheckThreshold);
+    created->setReusable(reusable == JNI_TRUE);
+    return (jlong) created;
+}
+
+static jlong DR_DocumentSkewDetectorCanny_createLuma(JNIEnv *env, jclass /*clazz*/,
+                                                     jobject buffer, jint width, jint height,
+                                                     jint rowStride, jint targetWidth,
+                                                     jint targetHeight, jint threads,
+                                                     jint pyramidSize, jboolean refine,
+                                                     jintArray order, jfloat preCheckThreshold,
+                                                     jboolean reusable) {
+    void *data = env->GetDirectBufferAddress(buffer);
+    if (data == nullptr) {
+        // 不是直接缓冲区
+        return 0;
+    }
+    const jlong capacity = env->GetDirectBufferCapacity(buffer);
+    if (width <= 0 || height <= 0 || rowStride < width
+        || capacity < (jlong) rowStride * (height - 1) + width) {
+        // 缓冲区不足
+        return 0;
+    }
+    jint *orders = nullptr;
+    jsize count = 0;
+    if (order != nullptr) {
+        orders = env->GetIntArrayElements(order, JNI_FALSE);
+        count = env->GetArrayLength(order);
+    }
+    auto created = new DR::DocumentSkewDetectorCanny(
+            DR::DocumentSkewDetectorCanny::fromLuma(data, width, height, rowStride,
+                                                    targetWidth, targetHeight),
+            threads, pyramidSize, orders, count);
+    if (orders != nullptr) {
+        env->ReleaseIntArrayElements(order, orders, JNI_ABORT);
+    }
+    created->setRefine(refine == JNI_TRUE);
+    created->setPreCheckThreshold(preCheckThreshold);
+    created->setReusable(reusable == JNI_TRUE);
     return (jlong) created;
 }
 
+static jboolean DR_DocumentSkewDetectorCanny_reset(JNIEnv *env, jclass /*clazz*/,
+                                                   jlong nativePrt, jobject image,
+                                                   jint targetWidth, jint targetHeight,
+                                                   jintArray order) {
+    AndroidBitmapInfo info;
+    if (AndroidBitmap_getInfo(env, image, &info) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        // 无法获取位图信息
+        return JNI_FALSE;
+    }
+    if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888
+        && info.format != ANDROID_BITMAP_FORMAT_RGB_565) {
+        // 不支持的格式
+        return JNI_FALSE;
+    }
+    void *pixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, image, &pixels) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        // 无法锁定像素
+        return JNI_FALSE;
+    }
+    jint *orders = nullptr;
+    jsize count = 0;
+    if (order != nullptr) {
+        orders = env->GetIntArrayElements(order, JNI_FALSE);
+        count = env->GetArrayLength(order);
+    }
+    auto detector = (DR::DocumentSkewDetectorCanny *) nativePrt;
+    detector->reset((int) info.width, (int) info.height, pixels,
+                    info.format == ANDROID_BITMAP_FORMAT_RGBA_8888, targetWidth, targetHeight,
+                    orders, count);
+    if (orders != nullptr) {
+        env->ReleaseIntArrayElements(order, orders, JNI_ABORT);
+    }
+    AndroidBitmap_unlockPixels(env, image);
+    return JNI_TRUE;
+}
+
+static jboolean DR_DocumentSkewDetectorCanny_resetLuma(JNIEnv *env, jclass /*clazz*/,
+                                                       jlong nativePrt, jobject buffer,
+                                                       jint width, jint height, jint rowStride,
+                                                       jint targetWidth, jint targetHeight,
+                                                       jintArray order) {
+    void *data = env->GetDirectBufferAddress(buffer);
+    if (data == nullptr) {
+        // 不是直接缓冲区
+        return JNI_FALSE;
+    }
+    const jlong capacity = env->GetDirectBufferCapacity(buffer);
+    if (width <= 0 || height <= 0 || rowStride < width
+        || capacity < (jlong) rowStride * (height - 1) + width) {
+        // 缓冲区不足
+        return JNI_FALSE;
+    }
+    jint *orders = nullptr;
+    jsize count = 0;
+    if (order != nullptr) {
+        orders = env->GetIntArrayElements(order, JNI_FALSE);
+        count = env->GetArrayLength(order);
+    }
+    auto detector = (DR::DocumentSkewDetectorCanny *) nativePrt;
+    detector->resetLuma(data, width, height, rowStride, targetWidth, targetHeight,
+                        orders, count);
+    if (orders != nullptr) {
+        env->ReleaseIntArrayElements(order, orders, JNI_ABORT);
+    }
+    return JNI_TRUE;
+}
+
+static jboolean DR_DocumentSkewDetectorCanny_getTaskRecords(JNIEnv *env, jclass /*clazz*/,
+                                                            jlong nativePrt, jintArray states,
+                                                            jlongArray elapsedTimes) {
+    const int count = DR::DocumentSkewDetectorCanny::getTaskCount();
+    if (env->GetArrayLength(states) < count || env->GetArrayLength(elapsedTimes) < count) {
+        // 数组长度不足
+        return JNI_FALSE;
+    }
+    std::vector<int> ss((size_t) count);
+    std::vector<int64_t> es((size_t) count);
+    ((DR::DocumentSkewDetectorCanny *) nativePrt)->getTaskRecords(ss.data(), es.data());
+    std::vector<jint> js(ss.begin(), ss.end());
+    std::vector<jlong> je(es.begin(), es.end());
+    env->SetIntArrayRegion(states, 0, count, js.data());
+    env->SetLongArrayRegion(elapsedTimes, 0, count, je.data());
+    return JNI_TRUE;
+}
+
 jint DR_DocumentSkewDetectorCanny_RegisterNatives(JNIEnv *env) {
     jclass clazz = env->FindClass(
             "io/github/alexmofer/documentskewcorrection/core/DocumentSkewDetectorCanny");
@@ -78,8 +277,16 @@ jint DR_DocumentSkewDetectorCanny_RegisterNatives(JNIEnv *env) {
         return JNI_ERR;
     }
     JNINativeMethod methods[] = {
-            {"DR_DocumentSkewDetectorCanny_create", "(Ljava/lang/Object;)J",
-             (void *) (DR_DocumentSkewDetectorCanny_create)}
+            {"DR_DocumentSkewDetectorCanny_create",     "(Ljava/lang/Object;IIIIZ[IFZ)J",
+             (void *) (DR_DocumentSkewDetectorCanny_create)},
+            {"DR_DocumentSkewDetectorCanny_createLuma", "(Ljava/lang/Object;IIIIIIIZ[IFZ)J",
+             (void *) (DR_DocumentSkewDetectorCanny_createLuma)},
+            {"DR_DocumentSkewDetectorCanny_reset",      "(JLjava/lang/Object;II[I)Z",
+             (void *) (DR_DocumentSkewDetectorCanny_reset)},
+            {"DR_DocumentSkewDetectorCanny_resetLuma",  "(JLjava/lang/Object;IIIII[I)Z",
+             (void *) (DR_DocumentSkewDetectorCanny_resetLuma)},
+            {"DR_DocumentSkewDetectorCanny_getTaskRecords", "(J[I[J)Z",
+             (void *) (DR_DocumentSkewDetectorCanny_getTaskRecords)}
     };
     const jint result = env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
     env->DeleteLocalRef(clazz);
@@ -90,8 +297,27 @@ jint DR_DocumentSkewDetectorCanny_RegisterNatives(JNIEnv *env) {
 }
 
 static jlong DR_DocumentSkewDetectorDelegated_create(JNIEnv *env, jclass /*clazz*/,
-                                                     jint width, jint height, jbyteArray pixels) {
+                                                     jint width, jint height, jbyteArray pixels,
+                                                     jboolean refine) {
     auto created = new DR::DocumentSkewDetectorDelegated(env, width, height, pixels);
+    created->setRefine(refine == JNI_TRUE);
+    return (jlong) created;
+}
+
+static jlong DR_DocumentSkewDetectorDelegated_createDirect(JNIEnv *env, jclass /*clazz*/,
+                                                           jint width, jint height,
+                                                           jobject buffer, jboolean refine) {
+    if (env->GetDirectBufferAddress(buffer) == nullptr) {
+        // 不是直接缓冲区
+        return 0;
+    }
+    if (width <= 0 || height <= 0
+        || env->GetDirectBufferCapacity(buffer) < (jlong) width * height) {
+        // 缓冲区不足
+        return 0;
+    }
+    auto created = new DR::DocumentSkewDetectorDelegated(env, width, height, buffer);
+    created->setRefine(refine == JNI_TRUE);
     return (jlong) created;
 }
 
@@ -102,8 +328,54 @@ jint DR_DocumentSkewDetectorDelegated_RegisterNatives(JNIEnv *env) {
         return JNI_ERR;
     }
     JNINativeMethod methods[] = {
-            {"DR_DocumentSkewDetectorDelegated_create", "(II[B)J",
-             (void *) (DR_DocumentSkewDetectorDelegated_create)}
+            {"DR_DocumentSkewDetectorDelegated_create",       "(II[BZ)J",
+             (void *) (DR_DocumentSkewDetectorDelegated_create)},
+            {"DR_DocumentSkewDetectorDelegated_createDirect", "(IILjava/lang/Object;Z)J",
+             (void *) (DR_DocumentSkewDetectorDelegated_createDirect)}
+    };
+    const jint result = env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
+    env->DeleteLocalRef(clazz);
+    if (result != JNI_OK) {
+        return result;
+    }
+    return JNI_OK;
+}
+
+static jlong DR_DocumentSkewDetectorLines_create(JNIEnv *env, jclass /*clazz*/,
+                                                 jobject image, jboolean refine) {
+    // 注意 ANDROID_BITMAP_FORMAT_RGBA_8888 格式的位图会强制作为未预乘的位图处理，传入带透明度的位图会检测不准确。
+    AndroidBitmapInfo info;
+    if (AndroidBitmap_getInfo(env, image, &info) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        // 无法获取位图信息
+        return 0;
+    }
+    if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888
+        && info.format != ANDROID_BITMAP_FORMAT_RGB_565) {
+        // 不支持的格式
+        return 0;
+    }
+    void *pixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, image, &pixels) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        // 无法锁定像素
+        return 0;
+    }
+    auto created = new DR::DocumentSkewDetectorLines((int) info.width, (int) info.height, pixels,
+                                                     info.format ==
+                                                     ANDROID_BITMAP_FORMAT_RGBA_8888);
+    AndroidBitmap_unlockPixels(env, image);
+    created->setRefine(refine == JNI_TRUE);
+    return (jlong) created;
+}
+
+jint DR_DocumentSkewDetectorLines_RegisterNatives(JNIEnv *env) {
+    jclass clazz = env->FindClass(
+            "io/github/alexmofer/documentskewcorrection/core/DocumentSkewDetectorLines");
+    if (nullptr == clazz) {
+        return JNI_ERR;
+    }
+    JNINativeMethod methods[] = {
+            {"DR_DocumentSkewDetectorLines_create", "(Ljava/lang/Object;Z)J",
+             (void *) (DR_DocumentSkewDetectorLines_create)}
     };
     const jint result = env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
     env->DeleteLocalRef(clazz);
@@ -113,7 +385,8 @@ jint DR_DocumentSkewDetectorDelegated_RegisterNatives(JNIEnv *env) {
     return JNI_OK;
 }
 
-static jlong DR_DocumentSkewCorrector_create(JNIEnv *env, jclass /*clazz*/, jobject image) {
+static jlong DR_DocumentSkewCorrector_create(JNIEnv *env, jclass /*clazz*/, jobject image,
+                                             jint threads) {
     AndroidBitmapInfo info;
     if (AndroidBitmap_getInfo(env, image, &info) != ANDROID_BITMAP_RESULT_SUCCESS) {
         // 无法获取位图信息
@@ -127,7 +400,8 @@ static jlong DR_DocumentSkewCorrector_create(JNIEnv *env, jclass /*clazz*/, jobj
         // 无法锁定像素
         return 0;
     }
-    auto created = new DR::DocumentSkewCorrector((int) info.width, (int) info.height, pixels);
+    auto created = new DR::DocumentSkewCorrector((int) info.width, (int) info.height, pixels,
+                                                 threads);
     return (jlong) created;
 }
 
@@ -137,15 +411,21 @@ static void DR_DocumentSkewCorrector_release(JNIEnv *env, jobject /*thiz*/,
     AndroidBitmap_unlockPixels(env, image);
 }
 
+static bool DR_isOutputFormat(const AndroidBitmapInfo &info, jint mode) {
+    // 彩色输出为 RGBA_8888，灰度与二值化输出为单通道的 A_8
+    return info.format == (mode == DR::DocumentSkewCorrector::OUTPUT_RGBA
+                           ? ANDROID_BITMAP_FORMAT_RGBA_8888 : ANDROID_BITMAP_FORMAT_A_8);
+}
+
 static jboolean DR_DocumentSkewCorrector_correct(JNIEnv *env, jobject /*thiz*/,
                                                  jlong native_prt, jfloatArray points,
-                                                 jobject image) {
+                                                 jobject image, jint mode) {
     AndroidBitmapInfo info;
     if (AndroidBitmap_getInfo(env, image, &info) != ANDROID_BITMAP_RESULT_SUCCESS) {
         // 无法获取位图信息
         return JNI_FALSE;
     }
-    if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
+    if (!DR_isOutputFormat(info, mode)) {
         // 格式错误
         return JNI_FALSE;
     }
@@ -155,15 +435,64 @@ static jboolean DR_DocumentSkewCorrector_correct(JNIEnv *env, jobject /*thiz*/,
         return JNI_FALSE;
     }
     jfloat *ps = env->GetFloatArrayElements(points, JNI_FALSE);
-    ((DR::DocumentSkewCorrector *) native_prt)->correct((int) info.width, (int) info.height, pixels,
-                                                        ps[0], ps[1], ps[2], ps[3], ps[4], ps[5],
-                                                        ps[6], ps[7]);
+    const bool corrected = ((DR::DocumentSkewCorrector *) native_prt)->correct(
+            (int) info.width, (int) info.height, pixels, (int) info.stride, mode,
+            ps[0], ps[1], ps[2], ps[3], ps[4], ps[5], ps[6], ps[7]);
     env->ReleaseFloatArrayElements(points, ps, 0);
     if (AndroidBitmap_unlockPixels(env, image) != ANDROID_BITMAP_RESULT_SUCCESS) {
         // 解锁失败
         return JNI_FALSE;
     }
-    return JNI_TRUE;
+    return corrected ? JNI_TRUE : JNI_FALSE;
+}
+
+static jboolean DR_DocumentSkewCorrector_correctTo(JNIEnv *env, jobject /*thiz*/,
+                                                   jlong native_prt, jfloatArray points,
+                                                   jint width, jint height, jint mode,
+                                                   jobject output) {
+    jclass clazz = env->GetObjectClass(output);
+    jmethodID write = env->GetMethodID(clazz, "write", "([BII)V");
+    env->DeleteLocalRef(clazz);
+    if (write == nullptr) {
+        return JNI_FALSE;
+    }
+    const jsize capacity = 64 * 1024;
+    jbyteArray buffer = env->NewByteArray(capacity);
+    if (buffer == nullptr) {
+        return JNI_FALSE;
+    }
+    // 只在调用线程写出，校正线程不访问 JNI
+    DR::PngWriter writer([&](const unsigned char *data, size_t size) {
+        while (size > 0) {
+            const jsize count = (jsize) std::min(size, (size_t) capacity);
+            env->SetByteArrayRegion(buffer, 0, count, (const jbyte *) data);
+            env->CallVoidMethod(output, write, buffer, 0, count);
+            if (env->ExceptionCheck()) {
+                // 写出异常，返回后由 Java 层抛出
+                return false;
+            }
+            data += count;
+            size -= count;
+        }
+        return true;
+    });
+    jfloat ps[8];
+    env->GetFloatArrayRegion(points, 0, 8, ps);
+    const bool corrected = ((DR::DocumentSkewCorrector *) native_prt)->correct(
+            width, height, mode, writer,
+            ps[0], ps[1], ps[2], ps[3], ps[4], ps[5], ps[6], ps[7]);
+    env->DeleteLocalRef(buffer);
+    return corrected ? JNI_TRUE : JNI_FALSE;
+}
+
+static void DR_DocumentSkewCorrector_cancel(JNIEnv */*env*/, jobject /*thiz*/, jlong native_prt) {
+    ((DR::DocumentSkewCorrector *) native_prt)->cancel();
+}
+
+static void DR_DocumentSkewCorrector_setPlanCacheSize(JNIEnv */*env*/, jclass /*clazz*/,
+                                                     jlong size, jfloat tolerance) {
+    DR::DocumentSkewCorrectionPlanCache::getInstance().setCapacity(size > 0 ? (size_t) size : 0,
+                                                                   tolerance);
 }
 
 jint DR_DocumentSkewCorrector_RegisterNatives(JNIEnv *env) {
@@ -173,9 +502,95 @@ jint DR_DocumentSkewCorrector_RegisterNatives(JNIEnv *env) {
         return JNI_ERR;
     }
     JNINativeMethod methods[] = {
-            {"DR_DocumentSkewCorrector_create",  "(Ljava/lang/Object;)J",    (void *) (DR_DocumentSkewCorrector_create)},
+            {"DR_DocumentSkewCorrector_create",  "(Ljava/lang/Object;I)J",   (void *) (DR_DocumentSkewCorrector_create)},
             {"DR_DocumentSkewCorrector_release", "(JLjava/lang/Object;)V",   (void *) (DR_DocumentSkewCorrector_release)},
-            {"DR_DocumentSkewCorrector_correct", "(J[FLjava/lang/Object;)Z", (void *) (DR_DocumentSkewCorrector_correct)}
+            {"DR_DocumentSkewCorrector_correct", "(J[FLjava/lang/Object;I)Z", (void *) (DR_DocumentSkewCorrector_correct)},
+            {"DR_DocumentSkewCorrector_correctTo", "(J[FIIILjava/io/OutputStream;)Z", (void *) (DR_DocumentSkewCorrector_correctTo)},
+            {"DR_DocumentSkewCorrector_cancel",  "(J)V",                     (void *) (DR_DocumentSkewCorrector_cancel)},
+            {"DR_DocumentSkewCorrector_setPlanCacheSize", "(JF)V",           (void *) (DR_DocumentSkewCorrector_setPlanCacheSize)}
+    };
+    const jint result = env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
+    env->DeleteLocalRef(clazz);
+    if (result != JNI_OK) {
+        return result;
+    }
+    return JNI_OK;
+}
+
+static jboolean DR_DocumentSkewBandedCorrector_calculateRegion(JNIEnv *env, jclass /*clazz*/,
+                                                               jfloatArray points,
+                                                               jint width, jint height,
+                                                               jint top, jint rows, jint mode,
+                                                               jintArray region) {
+    jfloat *ps = env->GetFloatArrayElements(points, JNI_FALSE);
+    const auto srcRect = DR::DocumentSkewCorrector::toRect(ps[0], ps[1], ps[2], ps[3],
+                                                           ps[4], ps[5], ps[6], ps[7]);
+    env->ReleaseFloatArrayElements(points, ps, JNI_ABORT);
+    cv::Rect rect;
+    if (!DR::DocumentSkewCorrector::calculateRegion(srcRect, width, height, top, rows, mode,
+                                                    rect)) {
+        return JNI_FALSE;
+    }
+    jint *rs = env->GetIntArrayElements(region, JNI_FALSE);
+    rs[0] = rect.x;
+    rs[1] = rect.y;
+    rs[2] = rect.x + rect.width;
+    rs[3] = rect.y + rect.height;
+    env->ReleaseIntArrayElements(region, rs, 0);
+    return JNI_TRUE;
+}
+
+static jboolean DR_DocumentSkewBandedCorrector_correct(JNIEnv *env, jclass /*clazz*/,
+                                                       jobject source, jfloatArray points,
+                                                       jint width, jint height, jint top,
+                                                       jobject band, jint mode) {
+    AndroidBitmapInfo sourceInfo;
+    AndroidBitmapInfo bandInfo;
+    if (AndroidBitmap_getInfo(env, source, &sourceInfo) != ANDROID_BITMAP_RESULT_SUCCESS
+        || AndroidBitmap_getInfo(env, band, &bandInfo) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        // 无法获取位图信息
+        return JNI_FALSE;
+    }
+    if (sourceInfo.format != ANDROID_BITMAP_FORMAT_RGBA_8888 || !DR_isOutputFormat(bandInfo, mode)) {
+        // 格式错误
+        return JNI_FALSE;
+    }
+    void *sourcePixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, source, &sourcePixels) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        // 无法锁定像素
+        return JNI_FALSE;
+    }
+    void *bandPixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, band, &bandPixels) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        // 无法锁定像素
+        AndroidBitmap_unlockPixels(env, source);
+        return JNI_FALSE;
+    }
+    jfloat *ps = env->GetFloatArrayElements(points, JNI_FALSE);
+    const auto srcRect = DR::DocumentSkewCorrector::toRect(ps[0], ps[1], ps[2], ps[3],
+                                                           ps[4], ps[5], ps[6], ps[7]);
+    env->ReleaseFloatArrayElements(points, ps, JNI_ABORT);
+    const cv::Mat image((int) sourceInfo.height, (int) sourceInfo.width, CV_8UC4, sourcePixels,
+                        sourceInfo.stride);
+    cv::Mat dst((int) bandInfo.height, (int) bandInfo.width,
+                mode == DR::DocumentSkewCorrector::OUTPUT_RGBA ? CV_8UC4 : CV_8UC1, bandPixels,
+                bandInfo.stride);
+    const bool corrected = DR::DocumentSkewCorrector::correct(image, dst, top, width, height,
+                                                              srcRect, mode, 1, nullptr);
+    const bool unlocked = AndroidBitmap_unlockPixels(env, band) == ANDROID_BITMAP_RESULT_SUCCESS;
+    AndroidBitmap_unlockPixels(env, source);
+    return corrected && unlocked ? JNI_TRUE : JNI_FALSE;
+}
+
+jint DR_DocumentSkewBandedCorrector_RegisterNatives(JNIEnv *env) {
+    jclass clazz = env->FindClass(
+            "io/github/alexmofer/documentskewcorrection/core/DocumentSkewBandedCorrector");
+    if (nullptr == clazz) {
+        return JNI_ERR;
+    }
+    JNINativeMethod methods[] = {
+            {"DR_DocumentSkewBandedCorrector_calculateRegion", "([FIIIII[I)Z",                                (void *) (DR_DocumentSkewBandedCorrector_calculateRegion)},
+            {"DR_DocumentSkewBandedCorrector_correct",         "(Ljava/lang/Object;[FIIILjava/lang/Object;I)Z", (void *) (DR_DocumentSkewBandedCorrector_correct)}
     };
     const jint result = env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
     env->DeleteLocalRef(clazz);
@@ -202,9 +617,17 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void */*reversed*/) {
     if (register_result != JNI_OK) {
         return register_result;
     }
+    register_result = DR_DocumentSkewDetectorLines_RegisterNatives(env);
+    if (register_result != JNI_OK) {
+        return register_result;
+    }
     register_result = DR_DocumentSkewCorrector_RegisterNatives(env);
     if (register_result != JNI_OK) {
         return register_result;
     }
+    register_result = DR_DocumentSkewBandedCorrector_RegisterNatives(env);
+    if (register_result != JNI_OK) {
+        return register_result;
+    }
     return JNI_VERSION_1_6;
 }
\ No newline at end of file
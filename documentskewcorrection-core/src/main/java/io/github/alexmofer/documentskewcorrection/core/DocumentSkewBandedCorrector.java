@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.core;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import androidx.annotation.Keep;
+
+/**
+ * 分条文档校正器
+ * 按行分条输出校正结果：每条以逆透视变换求得其所需的原图区域，只解码该区域，校正后交给接收器。
+ * 原图与输出图均不会整张驻留内存，峰值内存与条高成正比而与图片尺寸无关，适合超大图片。
+ * 输出与 {@link DocumentSkewCorrector} 一致，仅有浮点舍入带来的细微差异。
+ * Created by Alex on 2025/6/12.
+ */
+@Keep
+public final class DocumentSkewBandedCorrector {
+
+    private final Context mContext;
+    private final Uri mUri;
+    private final int mBandHeight;
+    private final int mOutputWidth;
+    private final int mOutputHeight;
+    private final int mMaxOutputSize;
+    private final float mDpi;
+    private final float mPaperWidth;
+    private final float mPaperHeight;
+    private final int mOutputMode;
+    private volatile boolean mCancelled = false;
+
+    private DocumentSkewBandedCorrector(Builder builder) {
+        mContext = builder.mContext;
+        mUri = builder.mUri;
+        mBandHeight = builder.mBandHeight;
+        mOutputWidth = builder.mOutputWidth;
+        mOutputHeight = builder.mOutputHeight;
+        mMaxOutputSize = builder.mMaxOutputSize;
+        mDpi = builder.mDpi;
+        mPaperWidth = builder.mPaperWidth;
+        mPaperHeight = builder.mPaperHeight;
+        mOutputMode = builder.mOutputMode;
+    }
+
+    private static native boolean DR_DocumentSkewBandedCorrector_calculateRegion(
+            float[] points, int width, int height, int top, int rows, int mode, int[] region);
+
+    private static native boolean DR_DocumentSkewBandedCorrector_correct(
+            Object source, float[] points, int width, int height, int top, Object band, int mode);
+
+    /**
+     * 取消校正
+     * 可在其他线程调用，正在进行的校正在当前条输出结束后返回失败，之后的校正直接返回失败。
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * 校正（此处不进行点的位置校验，请确保点不交叉）
+     * 点的坐标基于按 EXIF 方向摆正后的图，输出即为摆正的文档。
+     * 图片内容只打开一次，输出尺寸的确定方式同 {@link DocumentSkewCorrector}。
+     *
+     * @param ltx  左上X
+     * @param lty  左上Y
+     * @param rtx  右上X
+     * @param rty  右上Y
+     * @param lbx  左下X
+     * @param lby  左下Y
+     * @param rbx  右下X
+     * @param rby  右下Y
+     * @param sink 接收器
+     * @return 校正完成时返回 true，被取消或边框无效时返回 false
+     * @throws Exception 解码失败或接收器异常
+     */
+    public boolean correct(float ltx, float lty, float rtx, float rty,
+                           float lbx, float lby, float rbx, float rby,
+                           Sink sink) throws Exception {
+        if (mCancelled) {
+            return false;
+        }
+        final float[] oriented = new float[]{ltx, lty, rtx, rty, lbx, lby, rbx, rby};
+        final int[] size = Utils.calculateOutputSize(oriented, mOutputWidth, mOutputHeight,
+                mMaxOutputSize, mDpi, mPaperWidth, mPaperHeight);
+        final int width = size[0];
+        final int height = size[1];
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        return new UriBitmapDecoder(mContext, mUri).decodeRegions(
+                (decoder, sourceWidth, sourceHeight, orientation) -> {
+                    // 映射回原图坐标，点的顺序不变，透视变换直接输出摆正的文档
+                    final float[] points = Utils.toRaw(oriented,
+                            sourceWidth, sourceHeight, orientation);
+                    return correct(decoder, sourceWidth, sourceHeight, points,
+                            width, height, sink);
+                });
+    }
+
+    private boolean correct(BitmapRegionDecoder decoder, int sourceWidth, int sourceHeight,
+                            float[] points, int width, int height, Sink sink) throws Exception {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inPremultiplied = false;
+        options.inSampleSize = getSampleSize(points, width, height);
+        sink.onStart(width, height);
+        final int bandHeight = Math.min(mBandHeight, height);
+        final Bitmap.Config config = mOutputMode == DocumentSkewCorrector.OUTPUT_MODE_ARGB ?
+                Bitmap.Config.ARGB_8888 : Bitmap.Config.ALPHA_8;
+        final Bitmap band = Bitmap.createBitmap(width, bandHeight, config);
+        band.setPremultiplied(false);
+        final int[] bounds = new int[4];
+        final Rect region = new Rect();
+        final float[] local = new float[8];
+        try {
+            for (int top = 0; top < height; top += bandHeight) {
+                if (mCancelled) {
+                    return false;
+                }
+                final int rows = Math.min(bandHeight, height - top);
+                if (rows != band.getHeight()) {
+                    // 最后一条行数不足，复用同一块内存
+                    band.reconfigure(width, rows, config);
+                    band.setPremultiplied(false);
+                }
+                if (!DR_DocumentSkewBandedCorrector_calculateRegion(points, width, height,
+                        top, rows, mOutputMode, bounds)) {
+                    return false;
+                }
+                region.set(bounds[0], bounds[1], bounds[2], bounds[3]);
+                if (region.intersect(0, 0, sourceWidth, sourceHeight)) {
+                    final Bitmap source = decoder.decodeRegion(region, options);
+                    if (source == null) {
+                        throw new Exception("Cannot get bitmap from uri.");
+                    }
+                    try {
+                        toLocal(points, region, options.inSampleSize, local);
+                        if (!DR_DocumentSkewBandedCorrector_correct(source, local,
+                                width, height, top, band, mOutputMode)) {
+                            return false;
+                        }
+                    } finally {
+                        source.recycle();
+                    }
+                } else {
+                    // 该条完全落在原图之外，与整图校正的边界填充一致；
+                    // 二值化时均匀区域为白，ALPHA_8 只取 alpha 通道，BLACK 的 alpha 为 255
+                    band.eraseColor(mOutputMode == DocumentSkewCorrector.OUTPUT_MODE_BINARY ?
+                            Color.BLACK : Color.TRANSPARENT);
+                }
+                sink.onBand(band, top);
+            }
+        } finally {
+            band.recycle();
+        }
+        return true;
+    }
+
+    /**
+     * 大幅缩小时按 2 的幂采样解码，剩余的缩放由透视变换完成
+     */
+    private static int getSampleSize(float[] points, int width, int height) {
+        final double naturalWidth = (Utils.calculatePointToPoint(
+                points[0], points[1], points[2], points[3])
+                + Utils.calculatePointToPoint(points[4], points[5], points[6], points[7])) * 0.5f;
+        final double naturalHeight = (Utils.calculatePointToPoint(
+                points[0], points[1], points[4], points[5])
+                + Utils.calculatePointToPoint(points[2], points[3], points[6], points[7])) * 0.5f;
+        return Math.min(Utils.calculateSampleSize((int) naturalWidth, width),
+                Utils.calculateSampleSize((int) naturalHeight, height));
+    }
+
+    /**
+     * 将原图坐标映射到采样解码后的区域坐标，采样后每个像素的中心位于其覆盖范围的中心
+     */
+    private static void toLocal(float[] points, Rect region, int sampleSize, float[] local) {
+        final float center = (sampleSize - 1) * 0.5f;
+        for (int i = 0; i < 8; i += 2) {
+            local[i] = (points[i] - region.left - center) / sampleSize;
+            local[i + 1] = (points[i + 1] - region.top - center) / sampleSize;
+        }
+    }
+
+    /**
+     * 接收器
+     */
+    public interface Sink {
+
+        /**
+         * 开始输出
+         *
+         * @param width  输出宽
+         * @param height 输出高
+         * @throws Exception 接收器异常
+         */
+        void onStart(int width, int height) throws Exception;
+
+        /**
+         * 输出一条
+         * 位图为未预乘的 ARGB_8888（灰度与二值化时为 ALPHA_8），宽为输出宽，高为该条行数；位图在各条之间复用，方法返回后不可再持有。
+         *
+         * @param band 输出条
+         * @param top  输出条在输出图中的起始行
+         * @throws Exception 接收器异常
+         */
+        void onBand(Bitmap band, int top) throws Exception;
+    }
+
+    /**
+     * 构建器
+     */
+    public static class Builder {
+
+        private static final int DEFAULT_BAND_HEIGHT = 256;
+        private Context mContext;
+        private Uri mUri;
+        private int mBandHeight = DEFAULT_BAND_HEIGHT;
+        private int mOutputWidth;
+        private int mOutputHeight;
+        private int mMaxOutputSize;
+        private float mDpi;
+        private float mPaperWidth;
+        private float mPaperHeight;
+        private int mOutputMode = DocumentSkewCorrector.OUTPUT_MODE_ARGB;
+
+        public Builder() {
+            if (Core.getInstance() == null) {
+                throw new RuntimeException("Core disable.");
+            }
+        }
+
+        /**
+         * 设置图片
+         * 构建时不解码，校正时按条解码所需区域。
+         *
+         * @param context Context
+         * @param uri     图片Uri
+         * @return 构建器
+         */
+        public Builder setImage(Context context, Uri uri) {
+            if (context == null || uri == null) {
+                throw new RuntimeException("Image is null.");
+            }
+            mContext = context.getApplicationContext();
+            mUri = uri;
+            return this;
+        }
+
+        /**
+         * 设置每条的行数
+         * 峰值内存约为一条输出与其所需原图区域之和，条越高解码次数越少。
+         *
+         * @param bandHeight 每条的行数，默认 256
+         * @return 构建器
+         */
+        public Builder setBandHeight(int bandHeight) {
+            if (bandHeight <= 0) {
+                throw new RuntimeException("Band height is not valid.");
+            }
+            mBandHeight = bandHeight;
+            return this;
+        }
+
+        /**
+         * 设置输出尺寸
+         *
+         * @param width  输出宽，不大于 0 时按边框尺寸输出
+         * @param height 输出高，不大于 0 时按边框尺寸输出
+         * @return 构建器
+         * @see DocumentSkewCorrector.Builder#setOutputSize(int, int)
+         */
+        public Builder setOutputSize(int width, int height) {
+            mOutputWidth = width;
+            mOutputHeight = height;
+            return this;
+        }
+
+        /**
+         * 设置最大输出尺寸
+         *
+         * @param maxSize 最大输出尺寸，不大于 0 时不限制
+         * @return 构建器
+         * @see DocumentSkewCorrector.Builder#setMaxOutputSize(int)
+         */
+        public Builder setMaxOutputSize(int maxSize) {
+            mMaxOutputSize = maxSize;
+            return this;
+        }
+
+        /**
+         * 设置输出 DPI
+         *
+         * @param dpi         DPI，不大于 0 时按边框尺寸输出
+         * @param paperWidth  纸张宽（毫米）
+         * @param paperHeight 纸张高（毫米）
+         * @return 构建器
+         * @see DocumentSkewCorrector.Builder#setOutputDpi(float, float, float)
+         */
+        public Builder setOutputDpi(float dpi, float paperWidth, float paperHeight) {
+            if (dpi > 0 && (paperWidth <= 0 || paperHeight <= 0)) {
+                throw new RuntimeException("Paper size is not valid.");
+            }
+            mDpi = dpi;
+            mPaperWidth = paperWidth;
+            mPaperHeight = paperHeight;
+            return this;
+        }
+
+        /**
+         * 设置输出模式
+         *
+         * @param mode 输出模式，默认为 {@link DocumentSkewCorrector#OUTPUT_MODE_ARGB}
+         * @return 构建器
+         * @see DocumentSkewCorrector.Builder#setOutputMode(int)
+         */
+        public Builder setOutputMode(int mode) {
+            if (mode != DocumentSkewCorrector.OUTPUT_MODE_ARGB
+                    && mode != DocumentSkewCorrector.OUTPUT_MODE_GRAY
+                    && mode != DocumentSkewCorrector.OUTPUT_MODE_BINARY) {
+                throw new RuntimeException("Output mode is not valid.");
+            }
+            mOutputMode = mode;
+            return this;
+        }
+
+        /**
+         * 构建
+         *
+         * @return 分条文档校正器
+         * @throws Exception 失败信息
+         */
+        public DocumentSkewBandedCorrector build() throws Exception {
+            if (mUri == null) {
+                throw new Exception("Image is null.");
+            }
+            return new DocumentSkewBandedCorrector(this);
+        }
+    }
+}
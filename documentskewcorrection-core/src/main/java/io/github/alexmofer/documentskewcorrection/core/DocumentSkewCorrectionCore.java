@@ -18,10 +18,14 @@ package io.github.alexmofer.documentskewcorrection.core;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * 文档校正
  * Created by Alex on 2025/5/26.
@@ -34,25 +38,35 @@ public class DocumentSkewCorrectionCore {
 
     @WorkerThread
     @Nullable
-    private static float[] detect(DocumentSkewDetector detector) {
+    private static DocumentSkewDetectionResult detectResult(DocumentSkewDetector detector,
+                                                            @Nullable CancellationSignal signal) {
         final int width = detector.getWidth();
         final int height = detector.getHeight();
-        final int[] points = detector.detect();
-        detector.release();
-        if (points == null) {
+        final DocumentSkewDetectionResult result;
+        if (signal != null) {
+            signal.setOnCancelListener(detector::cancel);
+        }
+        try {
+            result = detector.detectResult();
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+            detector.release();
+        }
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+        if (result == null) {
             // 识别结束，未检测到文档
             return null;
         }
-        final float[] ps = new float[8];
-        ps[0] = points[0] * 1f / width;
-        ps[1] = points[1] * 1f / height;
-        ps[2] = points[2] * 1f / width;
-        ps[3] = points[3] * 1f / height;
-        ps[4] = points[4] * 1f / width;
-        ps[5] = points[5] * 1f / height;
-        ps[6] = points[6] * 1f / width;
-        ps[7] = points[7] * 1f / height;
-        return ps;
+        return result.scale(1f / width, 1f / height);
+    }
+
+    @Nullable
+    private static float[] getPoints(@Nullable DocumentSkewDetectionResult result) {
+        return result == null ? null : result.getPoints();
     }
 
     /**
@@ -69,9 +83,7 @@ public class DocumentSkewCorrectionCore {
     @WorkerThread
     @Nullable
     public static float[] detect(Bitmap image, float maxSize) throws Exception {
-        return detect(new DocumentSkewDetectorCanny.Builder(maxSize)
-                .setImage(image, false)
-                .build());
+        return getPoints(detectResult(image, maxSize));
     }
 
     /**
@@ -87,7 +99,7 @@ public class DocumentSkewCorrectionCore {
     @WorkerThread
     @Nullable
     public static float[] detect(Bitmap image) throws Exception {
-        return detect(image, 500);
+        return getPoints(detectResult(image));
     }
 
     /**
@@ -100,22 +112,118 @@ public class DocumentSkewCorrectionCore {
     @WorkerThread
     @Nullable
     public static float[] detect(Context context, Uri uri) throws Exception {
-        return detect(new DocumentSkewDetectorCanny.Builder()
+        return getPoints(detectResult(context, uri));
+    }
+
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @param image   位图，要求同 {@link #detect(Bitmap, float)}
+     * @param maxSize 最大尺寸
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Bitmap image, float maxSize)
+            throws Exception {
+        return detectResult(image, maxSize, null);
+    }
+
+    /**
+     * 检测（附带置信度等信息，可取消）
+     *
+     * @param image   位图，要求同 {@link #detect(Bitmap, float)}
+     * @param maxSize 最大尺寸
+     * @param signal  取消信号，取消后检测在当前一轮处理结束后停止并释放内存
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     * @throws android.os.OperationCanceledException 检测被取消
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Bitmap image, float maxSize,
+                                                           @Nullable CancellationSignal signal)
+            throws Exception {
+        return detectResult(new DocumentSkewDetectorCanny.Builder(maxSize)
+                .setImage(image, false)
+                .build(), signal);
+    }
+
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @param image 位图，要求同 {@link #detect(Bitmap)}
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Bitmap image) throws Exception {
+        return detectResult(image, 500);
+    }
+
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @param context Context
+     * @param uri     图片链接
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Context context, Uri uri)
+            throws Exception {
+        return detectResult(context, uri, null);
+    }
+
+    /**
+     * 检测（附带置信度等信息，可取消）
+     *
+     * @param context Context
+     * @param uri     图片链接
+     * @param signal  取消信号，取消后检测在当前一轮处理结束后停止并释放内存
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     * @throws android.os.OperationCanceledException 检测被取消
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Context context, Uri uri,
+                                                           @Nullable CancellationSignal signal)
+            throws Exception {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+        return detectResult(new DocumentSkewDetectorCanny.Builder()
                 .setImage(context, uri)
-                .build());
+                .build(), signal);
     }
 
     @WorkerThread
     @Nullable
-    private static Bitmap correct(DocumentSkewCorrector corrector, float[] points) {
+    private static Bitmap correct(DocumentSkewCorrector corrector, float[] points,
+                                  @Nullable CancellationSignal signal) {
         final int width = corrector.getWidth();
         final int height = corrector.getHeight();
-        final Bitmap corrected = corrector.correct(
-                points[0] * width, points[1] * height,
-                points[2] * width, points[3] * height,
-                points[4] * width, points[5] * height,
-                points[6] * width, points[7] * height);
-        corrector.release();
+        final Bitmap corrected;
+        if (signal != null) {
+            signal.setOnCancelListener(corrector::cancel);
+        }
+        try {
+            corrected = corrector.correct(
+                    points[0] * width, points[1] * height,
+                    points[2] * width, points[3] * height,
+                    points[4] * width, points[5] * height,
+                    points[6] * width, points[7] * height);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+            corrector.release();
+        }
+        if (signal != null) {
+            if (signal.isCanceled() && corrected != null) {
+                corrected.recycle();
+            }
+            signal.throwIfCanceled();
+        }
         return corrected;
     }
 
@@ -132,9 +240,25 @@ public class DocumentSkewCorrectionCore {
     @WorkerThread
     @Nullable
     public static Bitmap correct(Bitmap image, float[] points) throws Exception {
+        return correct(image, points, null);
+    }
+
+    /**
+     * 校正文档（可取消）
+     *
+     * @param image  位图，要求同 {@link #correct(Bitmap, float[])}
+     * @param points 校正点
+     * @param signal 取消信号，取消后校正在当前条输出结束后停止并释放内存
+     * @return 校正后的位图
+     * @throws android.os.OperationCanceledException 校正被取消
+     */
+    @WorkerThread
+    @Nullable
+    public static Bitmap correct(Bitmap image, float[] points,
+                                 @Nullable CancellationSignal signal) throws Exception {
         return correct(new DocumentSkewCorrector.Builder()
                 .setImage(image, false)
-                .build(), points);
+                .build(), points, signal);
     }
 
     /**
@@ -148,8 +272,106 @@ public class DocumentSkewCorrectionCore {
     @WorkerThread
     @Nullable
     public static Bitmap correct(Context context, Uri uri, float[] points) throws Exception {
+        return correct(context, uri, points, null);
+    }
+
+    /**
+     * 校正文档（可取消）
+     *
+     * @param context Context
+     * @param uri     图片链接
+     * @param points  校正点
+     * @param signal  取消信号，取消后校正在当前条输出结束后停止并释放内存
+     * @return 校正后的位图
+     * @throws android.os.OperationCanceledException 校正被取消
+     */
+    @WorkerThread
+    @Nullable
+    public static Bitmap correct(Context context, Uri uri, float[] points,
+                                 @Nullable CancellationSignal signal) throws Exception {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
         return correct(new DocumentSkewCorrector.Builder()
-                .setImage(context, uri)
-                .build(), points);
+                .setImage(context, uri, points)
+                .build(), points, signal);
+    }
+
+    @WorkerThread
+    private static boolean correctTo(DocumentSkewCorrector corrector, float[] points,
+                                     OutputStream output, Bitmap.CompressFormat format,
+                                     int quality, @Nullable CancellationSignal signal)
+            throws IOException {
+        final int width = corrector.getWidth();
+        final int height = corrector.getHeight();
+        final boolean corrected;
+        if (signal != null) {
+            signal.setOnCancelListener(corrector::cancel);
+        }
+        try {
+            corrected = corrector.correctTo(
+                    points[0] * width, points[1] * height,
+                    points[2] * width, points[3] * height,
+                    points[4] * width, points[5] * height,
+                    points[6] * width, points[7] * height,
+                    output, format, quality);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+            corrector.release();
+        }
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+        return corrected;
+    }
+
+    /**
+     * 校正文档并直接编码写出
+     * 仅支持 PNG，由原生层逐条校正逐条编码，不生成完整的输出位图；JPEG 与 WEBP 请以 correct 校正后自行编码。
+     *
+     * @param context Context
+     * @param uri     图片链接
+     * @param points  校正点
+     * @param output  输出流，不会被关闭
+     * @param format  编码格式，仅支持 PNG，其他格式抛出异常
+     * @param quality 编码质量，PNG 忽略
+     * @return 校正并写出成功时返回true
+     */
+    @WorkerThread
+    public static boolean correctTo(Context context, Uri uri, float[] points,
+                                    OutputStream output, Bitmap.CompressFormat format,
+                                    int quality) throws Exception {
+        return correctTo(context, uri, points, output, format, quality, null);
+    }
+
+    /**
+     * 校正文档并直接编码写出（可取消）
+     *
+     * @param context Context
+     * @param uri     图片链接
+     * @param points  校正点
+     * @param output  输出流，不会被关闭，取消时可能已写出部分数据
+     * @param format  编码格式，仅支持 PNG，其他格式抛出异常
+     * @param quality 编码质量，PNG 忽略
+     * @param signal  取消信号，取消后校正在当前条输出结束后停止并释放内存
+     * @return 校正并写出成功时返回true
+     * @throws android.os.OperationCanceledException 校正被取消
+     */
+    @WorkerThread
+    public static boolean correctTo(Context context, Uri uri, float[] points,
+                                    OutputStream output, Bitmap.CompressFormat format,
+                                    int quality, @Nullable CancellationSignal signal)
+            throws Exception {
+        if (format != Bitmap.CompressFormat.PNG) {
+            throw new RuntimeException("Format is not supported.");
+        }
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+        return correctTo(new DocumentSkewCorrector.Builder()
+                .setImage(context, uri, points)
+                .build(), points, output, format, quality, signal);
     }
 }
@@ -17,10 +17,17 @@ package io.github.alexmofer.documentskewcorrection.core;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 
 import androidx.annotation.Keep;
 import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * 文档校正器
@@ -29,23 +36,96 @@ import androidx.annotation.Nullable;
 @Keep
 public final class DocumentSkewCorrector {
 
+    /**
+     * 输出模式：ARGB_8888 彩色
+     */
+    public static final int OUTPUT_MODE_ARGB = 0;
+    /**
+     * 输出模式：灰度，输出 ALPHA_8 位图，alpha 通道为灰度值
+     */
+    public static final int OUTPUT_MODE_GRAY = 1;
+    /**
+     * 输出模式：自适应阈值二值化，输出 ALPHA_8 位图，alpha 通道为 0（黑）或 255（白）
+     */
+    public static final int OUTPUT_MODE_BINARY = 2;
+    /**
+     * 校正方案缓存的默认边框吸附容差（像素）
+     */
+    public static final float PLAN_CACHE_TOLERANCE = 1;
     private final long mNativePrt;
     private final Bitmap mImage;
     private final boolean mRecycleImage;
+    private final int mOrientation;
+    private final int mSourceWidth;
+    private final int mSourceHeight;
+    private final int mLeft;
+    private final int mTop;
+    private final int mOutputWidth;
+    private final int mOutputHeight;
+    private final int mMaxOutputSize;
+    private final float mDpi;
+    private final float mPaperWidth;
+    private final float mPaperHeight;
+    private final int mOutputMode;
     private boolean mReleased = false;
 
-    private DocumentSkewCorrector(long nativePrt, Bitmap image, boolean recycleImage) {
+    private DocumentSkewCorrector(long nativePrt, Builder builder) {
         mNativePrt = nativePrt;
-        mImage = image;
-        mRecycleImage = recycleImage;
+        mImage = builder.mImage;
+        mRecycleImage = builder.mRecycleImage;
+        mOrientation = builder.mOrientation;
+        mSourceWidth = builder.mSourceWidth;
+        mSourceHeight = builder.mSourceHeight;
+        mLeft = builder.mLeft;
+        mTop = builder.mTop;
+        mOutputWidth = builder.mOutputWidth;
+        mOutputHeight = builder.mOutputHeight;
+        mMaxOutputSize = builder.mMaxOutputSize;
+        mDpi = builder.mDpi;
+        mPaperWidth = builder.mPaperWidth;
+        mPaperHeight = builder.mPaperHeight;
+        mOutputMode = builder.mOutputMode;
+    }
+
+    private static native long DR_DocumentSkewCorrector_create(Object image, int threads);
+
+    private static native void DR_DocumentSkewCorrector_setPlanCacheSize(long size,
+                                                                          float tolerance);
+
+    /**
+     * 设置校正方案缓存大小
+     * 边框吸附容差为 {@link #PLAN_CACHE_TOLERANCE} 像素，见 {@link #setPlanCacheSize(long, float)}。
+     *
+     * @param size 缓存大小（字节），不大于 0 时关闭并清空缓存，默认关闭
+     */
+    public static void setPlanCacheSize(long size) {
+        setPlanCacheSize(size, PLAN_CACHE_TOLERANCE);
     }
 
-    private static native long DR_DocumentSkewCorrector_create(Object image);
+    /**
+     * 设置校正方案缓存大小
+     * 固定机位批量校正时边框与输出尺寸几乎不变，开启后缓存每个输出像素在原图中的定点坐标，
+     * 相同方案的校正只需一次重映射，省去透视变换的逐像素计算。
+     * 命中条件：原图尺寸与输出尺寸均相同，且边框四个点的各坐标（量化到 1/32 像素）与缓存方案相差均不超过吸附容差；
+     * 有多个方案满足时取边框最接近的。命中时以缓存方案的边框输出，与本次边框最多相差吸附容差，
+     * 检测结果逐帧抖动的边框因此仍可复用同一方案；容差为 0 时只有量化后完全相同的边框才命中。
+     * 缓存为进程内共享，按最近最少使用淘汰；缩小超过一半的校正不缓存。每个方案约占输出像素数 × 6 字节，
+     * 超过缓存大小的方案不分配映射表，直接透视变换。
+     *
+     * @param size      缓存大小（字节），不大于 0 时关闭并清空缓存，默认关闭
+     * @param tolerance 边框吸附容差（像素），不大于 0 时要求边框完全相同
+     */
+    public static void setPlanCacheSize(long size, float tolerance) {
+        if (Core.getInstance() == null) {
+            throw new RuntimeException("Core disable.");
+        }
+        DR_DocumentSkewCorrector_setPlanCacheSize(size, tolerance);
+    }
 
     /**
      * 释放
      */
-    public void release() {
+    public synchronized void release() {
         if (mReleased) {
             return;
         }
@@ -56,26 +136,49 @@ public final class DocumentSkewCorrector {
         }
     }
 
+    /**
+     * 取消校正
+     * 可在其他线程调用，正在进行的校正在当前块输出结束后返回空，之后的校正直接返回空。
+     * 取消后仍需调用 {@link #release()} 释放。
+     */
+    public synchronized void cancel() {
+        if (mReleased) {
+            return;
+        }
+        DR_DocumentSkewCorrector_cancel(mNativePrt);
+    }
+
     /**
      * 获取位图宽度
      *
-     * @return 位图宽度
+     * @return 按 EXIF 方向摆正后的位图宽度，区域解码时为原图宽度
      */
     public int getWidth() {
-        return mImage.getWidth();
+        return Utils.isTransposed(mOrientation) ? mSourceHeight : mSourceWidth;
     }
 
     /**
      * 获取位图高度
      *
-     * @return 位图高度
+     * @return 按 EXIF 方向摆正后的位图高度，区域解码时为原图高度
      */
     public int getHeight() {
-        return mImage.getHeight();
+        return Utils.isTransposed(mOrientation) ? mSourceWidth : mSourceHeight;
+    }
+
+    /**
+     * 获取 EXIF 方向
+     *
+     * @return EXIF 方向
+     */
+    public int getOrientation() {
+        return mOrientation;
     }
 
     /**
      * 校正（此处不进行点的位置校验，请确保点不交叉）
+     * 点的坐标基于按 EXIF 方向摆正后的图，方向已合入透视变换，输出即为摆正的文档。
+     * 输出尺寸按构建器设置的输出尺寸、DPI 或最大尺寸确定，透视变换直接映射到该尺寸，插值方式按缩放比例选择。
      *
      * @param ltx 左上X
      * @param lty 左上Y
@@ -85,7 +188,7 @@ public final class DocumentSkewCorrector {
      * @param lby 左下Y
      * @param rbx 右下X
      * @param rby 右下Y
-     * @return 校正后的位图，校正失败时返回空
+     * @return 校正后的位图，校正失败或被取消时返回空
      */
     @Nullable
     public Bitmap correct(float ltx, float lty, float rtx, float rty,
@@ -93,44 +196,171 @@ public final class DocumentSkewCorrector {
         if (mReleased) {
             return null;
         }
-        final int width = (int) Math.round(
-                (Utils.calculatePointToPoint(ltx, lty, rtx, rty)
-                        + Utils.calculatePointToPoint(lbx, lby, rbx, rby)) * 0.5f);
-        final int height = (int) Math.round(
-                (Utils.calculatePointToPoint(ltx, lty, lbx, lby)
-                        + Utils.calculatePointToPoint(rtx, rty, rbx, rby)) * 0.5f);
+        final int[] size = Utils.calculateOutputSize(
+                new float[]{ltx, lty, rtx, rty, lbx, lby, rbx, rby}, mOutputWidth, mOutputHeight,
+                mMaxOutputSize, mDpi, mPaperWidth, mPaperHeight);
+        return correct(ltx, lty, rtx, rty, lbx, lby, rbx, rby, size[0], size[1]);
+    }
+
+    /**
+     * 校正到指定尺寸（此处不进行点的位置校验，请确保点不交叉）
+     * 忽略构建器设置的输出尺寸、DPI 与最大尺寸。
+     *
+     * @param ltx    左上X
+     * @param lty    左上Y
+     * @param rtx    右上X
+     * @param rty    右上Y
+     * @param lbx    左下X
+     * @param lby    左下Y
+     * @param rbx    右下X
+     * @param rby    右下Y
+     * @param width  输出宽
+     * @param height 输出高
+     * @return 校正后的位图，格式按输出模式确定，校正失败或被取消时返回空
+     */
+    @Nullable
+    public Bitmap correct(float ltx, float lty, float rtx, float rty,
+                          float lbx, float lby, float rbx, float rby, int width, int height) {
+        if (mReleased) {
+            return null;
+        }
         if (width <= 0 || height <= 0) {
             return null;
         }
-        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Bitmap bitmap = Bitmap.createBitmap(width, height,
+                mOutputMode == OUTPUT_MODE_ARGB ? Bitmap.Config.ARGB_8888 : Bitmap.Config.ALPHA_8);
         bitmap.setPremultiplied(false);
-        final float[] points = new float[8];
-        points[0] = ltx;
-        points[1] = lty;
-        points[2] = rtx;
-        points[3] = rty;
-        points[4] = lbx;
-        points[5] = lby;
-        points[6] = rbx;
-        points[7] = rby;
-        if (DR_DocumentSkewCorrector_correct(mNativePrt, points, bitmap)) {
+        final float[] points = toSource(ltx, lty, rtx, rty, lbx, lby, rbx, rby);
+        if (DR_DocumentSkewCorrector_correct(mNativePrt, points, bitmap, mOutputMode)) {
             return bitmap;
         }
         bitmap.recycle();
         return null;
     }
 
+    /**
+     * 校正并编码写出（此处不进行点的位置校验，请确保点不交叉）
+     * 仅支持 PNG：由原生代码按条校正并流式编码写出，不会创建整张输出位图，也不经过 {@link Bitmap#compress}；
+     * 灰度时写出 8 位灰度 PNG，二值化时写出 1 位灰度 PNG。
+     * PNG 只使用已缓存的校正方案（见 {@link #setPlanCacheSize(long)}），未命中时直接透视变换，不会为其生成方案。
+     * JPEG 与 WEBP 没有可在全部 ABI 上链接的原生编码器，不支持，需要时请以
+     * {@link #correct(float, float, float, float, float, float, float, float)} 校正后自行编码。
+     * 输出尺寸的确定方式同 {@link #correct(float, float, float, float, float, float, float, float)}。
+     *
+     * @param ltx     左上X
+     * @param lty     左上Y
+     * @param rtx     右上X
+     * @param rty     右上Y
+     * @param lbx     左下X
+     * @param lby     左下Y
+     * @param rbx     右下X
+     * @param rby     右下Y
+     * @param output  输出流，不会关闭
+     * @param format  格式，仅支持 {@link Bitmap.CompressFormat#PNG}
+     * @param quality 质量，PNG 无损，忽略该值
+     * @return 写出完成时返回 true，校正失败或被取消时返回 false
+     * @throws IOException 写出异常
+     */
+    public boolean correctTo(float ltx, float lty, float rtx, float rty,
+                             float lbx, float lby, float rbx, float rby,
+                             OutputStream output, Bitmap.CompressFormat format, int quality)
+            throws IOException {
+        if (format != Bitmap.CompressFormat.PNG) {
+            throw new RuntimeException("Format is not supported.");
+        }
+        if (mReleased) {
+            return false;
+        }
+        final int[] size = Utils.calculateOutputSize(
+                new float[]{ltx, lty, rtx, rty, lbx, lby, rbx, rby}, mOutputWidth, mOutputHeight,
+                mMaxOutputSize, mDpi, mPaperWidth, mPaperHeight);
+        if (size[0] <= 0 || size[1] <= 0) {
+            return false;
+        }
+        // 写出异常在原生方法返回后抛出
+        return DR_DocumentSkewCorrector_correctTo(mNativePrt,
+                toSource(ltx, lty, rtx, rty, lbx, lby, rbx, rby),
+                size[0], size[1], mOutputMode, output);
+    }
+
+    /**
+     * 校正并编码写出到文件描述符
+     *
+     * @param ltx     左上X
+     * @param lty     左上Y
+     * @param rtx     右上X
+     * @param rty     右上Y
+     * @param lbx     左下X
+     * @param lby     左下Y
+     * @param rbx     右下X
+     * @param rby     右下Y
+     * @param fd      文件描述符，不会关闭
+     * @param format  格式，仅支持 {@link Bitmap.CompressFormat#PNG}
+     * @param quality 质量，PNG 无损，忽略该值
+     * @return 写出完成时返回 true，校正失败或被取消时返回 false
+     * @throws IOException 写出异常
+     * @see #correctTo(float, float, float, float, float, float, float, float, OutputStream, Bitmap.CompressFormat, int)
+     */
+    public boolean correctTo(float ltx, float lty, float rtx, float rty,
+                             float lbx, float lby, float rbx, float rby,
+                             ParcelFileDescriptor fd, Bitmap.CompressFormat format, int quality)
+            throws IOException {
+        final FileOutputStream output = new FileOutputStream(fd.getFileDescriptor());
+        final boolean corrected = correctTo(ltx, lty, rtx, rty, lbx, lby, rbx, rby,
+                output, format, quality);
+        output.flush();
+        return corrected;
+    }
+
+    /**
+     * 映射到解码位图的坐标
+     * 映射回原图坐标，点的顺序不变，透视变换直接输出摆正的文档；区域解码时再平移到区域坐标。
+     */
+    private float[] toSource(float ltx, float lty, float rtx, float rty,
+                             float lbx, float lby, float rbx, float rby) {
+        final float[] points = Utils.toRaw(new float[]{ltx, lty, rtx, rty, lbx, lby, rbx, rby},
+                mSourceWidth, mSourceHeight, mOrientation);
+        if (mLeft != 0 || mTop != 0) {
+            for (int i = 0; i < 8; i += 2) {
+                points[i] -= mLeft;
+                points[i + 1] -= mTop;
+            }
+        }
+        return points;
+    }
+
     private native void DR_DocumentSkewCorrector_release(long nativePrt, Object image);
 
-    private native boolean DR_DocumentSkewCorrector_correct(long nativePrt, float[] points, Object image);
+    private native boolean DR_DocumentSkewCorrector_correct(long nativePrt, float[] points, Object image,
+                                                            int mode);
+
+    private native boolean DR_DocumentSkewCorrector_correctTo(long nativePrt, float[] points,
+                                                              int width, int height, int mode,
+                                                              OutputStream output);
+
+    private native void DR_DocumentSkewCorrector_cancel(long nativePrt);
 
     /**
      * 构建器
      */
     public static class Builder {
 
+        private static final int REGION_MARGIN = 16;// 区域解码外扩的边距
         private Bitmap mImage;
         private boolean mRecycleImage;
+        private int mOrientation = ExifInterface.ORIENTATION_NORMAL;
+        private int mSourceWidth;
+        private int mSourceHeight;
+        private int mLeft;
+        private int mTop;
+        private int mOutputWidth;
+        private int mOutputHeight;
+        private int mMaxOutputSize;
+        private float mDpi;
+        private float mPaperWidth;
+        private float mPaperHeight;
+        private int mThreads = 1;
+        private int mOutputMode = OUTPUT_MODE_ARGB;
 
         public Builder() {
             if (Core.getInstance() == null) {
@@ -165,6 +395,10 @@ public final class DocumentSkewCorrector {
             }
             mImage = image;
             mRecycleImage = recycleImage;
+            mSourceWidth = image.getWidth();
+            mSourceHeight = image.getHeight();
+            mLeft = 0;
+            mTop = 0;
             return this;
         }
 
@@ -176,14 +410,166 @@ public final class DocumentSkewCorrector {
          * @return 构建器
          */
         public Builder setImage(Context context, Uri uri) {
-            final Bitmap image;
+            final UriBitmapDecoder.Result result;
+            try {
+                result = Utils.decodeUri(context, uri, false,
+                        Bitmap.Config.ARGB_8888, false, null);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            // EXIF 方向不旋转位图，校正时合入透视变换
+            setImage(result.getBitmap(), true);
+            return setOrientation(result.getOrientation());
+        }
+
+        /**
+         * 设置位图（区域解码）
+         * 根据边框计算其在原图中的外接矩形，外扩少许边距后只解码该区域，文档只占照片一小部分时可大幅减少解码耗时与内存。
+         * 校正时的点仍基于完整的原图（按 EXIF 方向摆正后），{@link DocumentSkewCorrector#getWidth()} 等也返回原图尺寸，
+         * 区域偏移已合入透视变换。校正的边框不可超出该区域。
+         *
+         * @param context Context
+         * @param uri     图片Uri
+         * @param points  边框四个点（左上、右上、左下、右下），已按摆正后的图片宽高归一化
+         * @return 构建器
+         */
+        public Builder setImage(Context context, Uri uri, float[] points) {
+            if (points == null || points.length != 8) {
+                throw new RuntimeException("Points is not valid.");
+            }
+            final UriBitmapDecoder.Result result;
             try {
-                image = Utils.fromUri(context, uri, false,
-                        Bitmap.Config.ARGB_8888, false);
+                result = new UriBitmapDecoder(context, uri).decodeRegion(
+                        Bitmap.Config.ARGB_8888, false,
+                        (width, height, orientation) ->
+                                getRegion(points, width, height, orientation));
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
-            return setImage(image, true);
+            setImage(result.getBitmap(), true);
+            mSourceWidth = result.getSourceWidth();
+            mSourceHeight = result.getSourceHeight();
+            mLeft = result.getLeft();
+            mTop = result.getTop();
+            return setOrientation(result.getOrientation());
+        }
+
+        private static Rect getRegion(float[] points, int width, int height, int orientation) {
+            final boolean transposed = Utils.isTransposed(orientation);
+            final int orientedWidth = transposed ? height : width;
+            final int orientedHeight = transposed ? width : height;
+            final float[] oriented = new float[8];
+            for (int i = 0; i < 8; i += 2) {
+                oriented[i] = points[i] * orientedWidth;
+                oriented[i + 1] = points[i + 1] * orientedHeight;
+            }
+            final float[] raw = Utils.toRaw(oriented, width, height, orientation);
+            float left = raw[0];
+            float top = raw[1];
+            float right = raw[0];
+            float bottom = raw[1];
+            for (int i = 2; i < 8; i += 2) {
+                left = Math.min(left, raw[i]);
+                top = Math.min(top, raw[i + 1]);
+                right = Math.max(right, raw[i]);
+                bottom = Math.max(bottom, raw[i + 1]);
+            }
+            // 外扩边距供插值采样边缘像素，超出原图的部分由解码器裁剪
+            return new Rect((int) Math.floor(left) - REGION_MARGIN,
+                    (int) Math.floor(top) - REGION_MARGIN,
+                    (int) Math.ceil(right) + 1 + REGION_MARGIN,
+                    (int) Math.ceil(bottom) + 1 + REGION_MARGIN);
+        }
+
+        /**
+         * 设置 EXIF 方向
+         * 不旋转位图，校正时将方向合入透视变换，省去一张旋转后的全尺寸位图。
+         * 以 Uri 设置位图时自动读取，以位图设置时需在其后自行设置。
+         *
+         * @param orientation EXIF 方向，默认为 {@link ExifInterface#ORIENTATION_NORMAL}
+         * @return 构建器
+         */
+        public Builder setOrientation(int orientation) {
+            mOrientation = orientation;
+            return this;
+        }
+
+        /**
+         * 设置输出尺寸
+         * 设置后忽略 DPI 与最大尺寸，输出固定为该尺寸。
+         *
+         * @param width  输出宽，不大于 0 时按边框尺寸输出
+         * @param height 输出高，不大于 0 时按边框尺寸输出
+         * @return 构建器
+         */
+        public Builder setOutputSize(int width, int height) {
+            mOutputWidth = width;
+            mOutputHeight = height;
+            return this;
+        }
+
+        /**
+         * 设置最大输出尺寸
+         * 输出的最长边超出时等比缩小，透视变换直接映射到缩小后的尺寸，不会先输出原尺寸再缩放。
+         *
+         * @param maxSize 最大输出尺寸，不大于 0 时不限制
+         * @return 构建器
+         */
+        public Builder setMaxOutputSize(int maxSize) {
+            mMaxOutputSize = maxSize;
+            return this;
+        }
+
+        /**
+         * 设置输出 DPI
+         * 按纸张物理尺寸与 DPI 计算输出尺寸，纸张方向与边框方向一致，例如 A4 为 210 × 297 毫米。
+         * 仍受最大输出尺寸限制。
+         *
+         * @param dpi         DPI，不大于 0 时按边框尺寸输出
+         * @param paperWidth  纸张宽（毫米）
+         * @param paperHeight 纸张高（毫米）
+         * @return 构建器
+         */
+        public Builder setOutputDpi(float dpi, float paperWidth, float paperHeight) {
+            if (dpi > 0 && (paperWidth <= 0 || paperHeight <= 0)) {
+                throw new RuntimeException("Paper size is not valid.");
+            }
+            mDpi = dpi;
+            mPaperWidth = paperWidth;
+            mPaperHeight = paperHeight;
+            return this;
+        }
+
+        /**
+         * 设置输出模式
+         * 灰度与二值化在透视变换的同一次输出中完成，不需要先输出彩色位图再转换，输出位图为 ALPHA_8，内存为彩色的四分之一。
+         * ALPHA_8 位图的 alpha 通道即为灰度值，显示时需作为灰度处理（如以 ColorMatrix 映射），上传或识别时直接读取即可。
+         *
+         * @param mode 输出模式，默认为 {@link DocumentSkewCorrector#OUTPUT_MODE_ARGB}
+         * @return 构建器
+         */
+        public Builder setOutputMode(int mode) {
+            if (mode != OUTPUT_MODE_ARGB && mode != OUTPUT_MODE_GRAY && mode != OUTPUT_MODE_BINARY) {
+                throw new RuntimeException("Output mode is not valid.");
+            }
+            mOutputMode = mode;
+            return this;
+        }
+
+        /**
+         * 设置校正线程数
+         * 输出图按固定尺寸分块，由该数量的线程并行输出，不再由 OpenCV 自行决定并行度；
+         * 分块与线程数无关，任意线程数的输出均完全一致。
+         *
+         * @param threads 线程数，默认为 1
+         * @return 构建器
+         */
+        public Builder setThreads(int threads) {
+            if (threads < 1) {
+                throw new RuntimeException("Threads must be positive.");
+            }
+            mThreads = threads;
+            return this;
         }
 
         /**
@@ -199,12 +585,12 @@ public final class DocumentSkewCorrector {
             if (mImage.isRecycled()) {
                 throw new Exception("Image is recycled.");
             }
-            final long nativePrt = DR_DocumentSkewCorrector_create(mImage);
+            final long nativePrt = DR_DocumentSkewCorrector_create(mImage, mThreads);
             if (nativePrt == 0) {
                 throw new Exception("Create fail.");
             }
             try {
-                return new DocumentSkewCorrector(nativePrt, mImage, mRecycleImage);
+                return new DocumentSkewCorrector(nativePrt, this);
             } catch (Exception e) {
                 if (mRecycleImage) {
                     mImage.recycle();
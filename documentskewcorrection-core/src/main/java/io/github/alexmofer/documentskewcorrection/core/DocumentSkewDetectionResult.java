@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.core;
+
+/**
+ * 文档检测结果
+ * Created by Alex on 2025/6/5.
+ */
+public final class DocumentSkewDetectionResult {
+
+    /**
+     * 没有参数组的检测器（或其他方案）的参数序号
+     */
+    public static final int PARAMETER_NONE = -1;
+    private final float[] mPoints;
+    private final float mConfidence;
+    private final int mParameter;
+    private final long mElapsedTime;
+    private final boolean mTimedOut;
+
+    /**
+     * 构造
+     *
+     * @param points      边框四个点（左上、右上、左下、右下）
+     * @param confidence  置信度，范围为 0 到 1
+     * @param parameter   产生结果的参数序号，没有参数组时为 {@link #PARAMETER_NONE}
+     * @param elapsedTime 检测耗时（纳秒）
+     * @param timedOut    是否超时
+     */
+    public DocumentSkewDetectionResult(float[] points, float confidence,
+                                       int parameter, long elapsedTime, boolean timedOut) {
+        if (points == null || points.length != 8) {
+            throw new RuntimeException("Points is not valid.");
+        }
+        mPoints = points;
+        mConfidence = Math.max(0, Math.min(1, confidence));
+        mParameter = parameter;
+        mElapsedTime = elapsedTime;
+        mTimedOut = timedOut;
+    }
+
+    /**
+     * 构造
+     *
+     * @param points      边框四个点（左上、右上、左下、右下）
+     * @param confidence  置信度，范围为 0 到 1
+     * @param parameter   产生结果的参数序号，没有参数组时为 {@link #PARAMETER_NONE}
+     * @param elapsedTime 检测耗时（纳秒）
+     */
+    public DocumentSkewDetectionResult(float[] points, float confidence,
+                                       int parameter, long elapsedTime) {
+        this(points, confidence, parameter, elapsedTime, false);
+    }
+
+    /**
+     * 获取边框
+     *
+     * @return 边框四个点（左上、右上、左下、右下）
+     */
+    public float[] getPoints() {
+        return mPoints;
+    }
+
+    /**
+     * 获取置信度
+     * 由边缘支撑度、面积占比及成功的参数组等计算得出，可用于决定是否还需要执行其他方案。
+     * Canny 检测器按成功任务的预处理轻重折减：高斯模糊越大、作用于直方图均衡化图时折减越多，最多折减 30%；
+     * 折减与任务的执行顺序无关，自适应顺序（{@link DocumentSkewDetectorCannyStatistics}）不会改变同一结果的置信度。
+     *
+     * @return 置信度，范围为 0 到 1
+     */
+    public float getConfidence() {
+        return mConfidence;
+    }
+
+    /**
+     * 获取产生结果的参数序号
+     * Canny 检测器可通过 {@link DocumentSkewDetectorCanny#getBlurSize(int)} 等方法解析具体参数。
+     *
+     * @return 参数序号，没有参数组时为 {@link #PARAMETER_NONE}
+     */
+    public int getParameter() {
+        return mParameter;
+    }
+
+    /**
+     * 获取检测耗时
+     *
+     * @return 检测耗时（纳秒）
+     */
+    public long getElapsedTime() {
+        return mElapsedTime;
+    }
+
+    /**
+     * 判断是否超时
+     * 超时的结果为截止时间前已得到的最优结果，可能未经完整的检测或精修；
+     * 没有任何一轮检测成功时为未达标候选中得分最高的一个（最大轮廓的最小外接矩形），置信度较低。
+     *
+     * @return 超时时返回 true
+     */
+    public boolean isTimedOut() {
+        return mTimedOut;
+    }
+
+    /**
+     * 缩放边框
+     *
+     * @param scaleX X轴缩放比
+     * @param scaleY Y轴缩放比
+     * @return 缩放边框后的检测结果
+     */
+    public DocumentSkewDetectionResult scale(float scaleX, float scaleY) {
+        final float[] points = new float[8];
+        for (int i = 0; i < 8; i += 2) {
+            points[i] = mPoints[i] * scaleX;
+            points[i + 1] = mPoints[i + 1] * scaleY;
+        }
+        return new DocumentSkewDetectionResult(points, mConfidence, mParameter, mElapsedTime,
+                mTimedOut);
+    }
+}
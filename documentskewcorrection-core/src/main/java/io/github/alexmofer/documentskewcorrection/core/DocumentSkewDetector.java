@@ -21,6 +21,7 @@ import android.net.Uri;
 
 import androidx.annotation.Keep;
 import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
 
 /**
  * 文档探测器
@@ -30,20 +31,34 @@ import androidx.annotation.Nullable;
 public abstract class DocumentSkewDetector {
 
     private final long mNativePrt;
-    private final int mImageWidth;
-    private final int mImageHeight;
+    private int mImageWidth;
+    private int mImageHeight;
+    private int mOrientation;
     private boolean mReleased = false;
 
     protected DocumentSkewDetector(long nativePrt, int width, int height) {
+        this(nativePrt, width, height, ExifInterface.ORIENTATION_NORMAL);
+    }
+
+    /**
+     * 构造
+     *
+     * @param nativePrt   原生对象指针
+     * @param width       检测图宽（未按 EXIF 方向摆正）
+     * @param height      检测图高（未按 EXIF 方向摆正）
+     * @param orientation EXIF 方向，检测在未摆正的图上进行，边框再映射到摆正后的图上
+     */
+    protected DocumentSkewDetector(long nativePrt, int width, int height, int orientation) {
         mNativePrt = nativePrt;
         mImageWidth = width;
         mImageHeight = height;
+        mOrientation = orientation;
     }
 
     /**
      * 释放
      */
-    public void release() {
+    public synchronized void release() {
         if (mReleased) {
             return;
         }
@@ -51,22 +66,78 @@ public abstract class DocumentSkewDetector {
         DR_DocumentSkewDetector_release(mNativePrt);
     }
 
+    /**
+     * 取消检测
+     * 可在其他线程调用，正在进行的检测在当前一轮处理结束后返回空并释放临时内存，之后的检测直接返回空。
+     * 取消后仍需调用 {@link #release()} 释放。
+     */
+    public synchronized void cancel() {
+        if (mReleased) {
+            return;
+        }
+        DR_DocumentSkewDetector_cancel(mNativePrt);
+    }
+
+    /**
+     * 获取原生对象指针
+     *
+     * @return 原生对象指针
+     */
+    protected long getNativePrt() {
+        return mNativePrt;
+    }
+
+    /**
+     * 判断是否已释放
+     *
+     * @return 已释放时返回 true
+     */
+    protected boolean isReleased() {
+        return mReleased;
+    }
+
+    /**
+     * 设置检测图尺寸
+     * 供可重置检测图的检测器在重置后更新尺寸，重置后的检测图视为已摆正。
+     *
+     * @param width  宽
+     * @param height 高
+     */
+    protected void setSize(int width, int height) {
+        mImageWidth = width;
+        mImageHeight = height;
+        mOrientation = ExifInterface.ORIENTATION_NORMAL;
+    }
+
     /**
      * 获取位图宽度
      *
-     * @return 位图宽度
+     * @return 按 EXIF 方向摆正后的位图宽度
      */
     public int getWidth() {
-        return mImageWidth;
+        return Utils.isTransposed(mOrientation) ? mImageHeight : mImageWidth;
     }
 
     /**
      * 获取位图高度
      *
-     * @return 位图高度
+     * @return 按 EXIF 方向摆正后的位图高度
      */
     public int getHeight() {
-        return mImageHeight;
+        return Utils.isTransposed(mOrientation) ? mImageWidth : mImageHeight;
+    }
+
+    /**
+     * 获取 EXIF 方向
+     *
+     * @return EXIF 方向，检测结果已按该方向映射到摆正后的图上
+     */
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    private float[] toOriented(float[] points) {
+        return Utils.toOriented(points, mImageWidth, mImageHeight, mOrientation);
     }
 
     /**
@@ -81,20 +152,96 @@ public abstract class DocumentSkewDetector {
         }
         final int[] points = new int[8];
         if (DR_DocumentSkewDetector_detect(mNativePrt, points)) {
+            if (mOrientation != ExifInterface.ORIENTATION_NORMAL) {
+                final float[] raw = new float[8];
+                for (int i = 0; i < 8; i++) {
+                    raw[i] = points[i];
+                }
+                final float[] oriented = toOriented(raw);
+                for (int i = 0; i < 8; i++) {
+                    points[i] = Math.round(oriented[i]);
+                }
+            }
             return points;
         }
         return null;
     }
 
+    /**
+     * 检测（亚像素精度）
+     *
+     * @return 检测到边框时返回边框四个点（左上、右上、左下、右下），未检测到时返回 null
+     */
+    @Nullable
+    public float[] detectPrecise() {
+        if (mReleased) {
+            return null;
+        }
+        final float[] points = new float[8];
+        if (DR_DocumentSkewDetector_detectPrecise(mNativePrt, points)) {
+            return toOriented(points);
+        }
+        return null;
+    }
+
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @return 检测到边框时返回检测结果，边框为亚像素精度，未检测到时返回 null
+     */
+    @Nullable
+    public DocumentSkewDetectionResult detectResult() {
+        return detectResult(Long.MAX_VALUE);
+    }
+
+    /**
+     * 检测（限时，尽力而为）
+     * 每轮预处理之间检查截止时间（第一轮总会执行），超时后不再开始新的一轮，返回已得到的最优结果，
+     * 没有任何一轮检测成功时返回未达标候选中得分最高的一个，并通过 {@link DocumentSkewDetectionResult#isTimedOut()}
+     * 标记超时，而不是超时完成或直接放弃。
+     *
+     * @param deadline 截止时间，与 {@link System#nanoTime()} 同一时基，{@link Long#MAX_VALUE} 表示不限时
+     * @return 检测到边框或超时得到备选边框时返回检测结果；完整检测后未检测到、超时且已执行的各轮均没有任何轮廓时返回 null
+     */
+    @Nullable
+    public DocumentSkewDetectionResult detectResult(long deadline) {
+        if (mReleased) {
+            return null;
+        }
+        final float[] points = new float[8];
+        final float[] confidence = new float[1];
+        final int[] parameter = new int[1];
+        final boolean[] timedOut = new boolean[1];
+        final long start = System.nanoTime();
+        final long timeout = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - start;
+        if (DR_DocumentSkewDetector_detectResult(mNativePrt, timeout,
+                points, confidence, parameter, timedOut)) {
+            return new DocumentSkewDetectionResult(toOriented(points), confidence[0], parameter[0],
+                    System.nanoTime() - start, timedOut[0]);
+        }
+        return null;
+    }
+
     private native void DR_DocumentSkewDetector_release(long nativePrt);
 
+    private native void DR_DocumentSkewDetector_cancel(long nativePrt);
+
     private native boolean DR_DocumentSkewDetector_detect(long nativePrt, int[] points);
 
+    private native boolean DR_DocumentSkewDetector_detectPrecise(long nativePrt, float[] points);
+
+    private native boolean DR_DocumentSkewDetector_detectResult(long nativePrt, long timeout,
+                                                                float[] points, float[] confidence,
+                                                                int[] parameter, boolean[] timedOut);
+
     /**
      * 构建器
      */
     public static abstract class Builder {
 
+        private boolean mRefine;
+        private int mOrientation = ExifInterface.ORIENTATION_NORMAL;
+
         public Builder() {
             if (Core.getInstance() == null) {
                 throw new RuntimeException("Core disable.");
@@ -112,20 +259,91 @@ public abstract class DocumentSkewDetector {
 
         /**
          * 设置位图
+         * 按 {@link #getSampleSize(int, int)} 的采样率解码，检测尺寸远小于原图时无需解码全尺寸位图。
          *
          * @param context Context
          * @param uri     图片Uri
          * @return 构建器
          */
         public Builder setImage(Context context, Uri uri) {
-            final Bitmap image;
+            final UriBitmapDecoder.Result result;
             try {
-                image = Utils.fromUri(context, uri, false,
-                        Bitmap.Config.RGB_565, false);
+                result = Utils.decodeUri(context, uri, false,
+                        Bitmap.Config.RGB_565, false, this::getSampleSize);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
-            return setImage(image, true);
+            // EXIF 方向不旋转位图，检测结果映射到摆正后的图上
+            setImage(result.getBitmap(), true);
+            return setOrientation(result.getOrientation());
+        }
+
+        /**
+         * 设置 EXIF 方向
+         * 检测在未摆正的位图上进行，检测结果与检测器宽高均按该方向映射到摆正后的图上，无需另外旋转位图。
+         * 以 Uri 设置位图时自动读取，以位图设置时需在其后自行设置。
+         *
+         * @param orientation EXIF 方向，默认为 {@link ExifInterface#ORIENTATION_NORMAL}
+         * @return 构建器
+         */
+        public Builder setOrientation(int orientation) {
+            mOrientation = orientation;
+            return this;
+        }
+
+        /**
+         * 获取 EXIF 方向
+         *
+         * @return EXIF 方向
+         */
+        protected int getOrientation() {
+            return mOrientation;
+        }
+
+        /**
+         * 获取从 Uri 解码位图时的采样率
+         * 子类按检测所需尺寸覆写，默认按原尺寸解码。
+         *
+         * @param width  原图宽
+         * @param height 原图高
+         * @return 采样率，须为 2 的幂
+         */
+        protected int getSampleSize(int width, int height) {
+            return 1;
+        }
+
+        /**
+         * 计算采样率
+         * 取 2 的幂，使采样后的边长不小于所需边长。
+         *
+         * @param length   原边长
+         * @param required 所需边长
+         * @return 采样率
+         */
+        protected static int calculateSampleSize(int length, int required) {
+            return Utils.calculateSampleSize(length, required);
+        }
+
+        /**
+         * 设置是否精修边框
+         * 开启后沿检测到的四条边在窄带内拟合直线，以直线交点作为亚像素精度的角点，
+         * 代价远低于增大检测尺寸，精修结果可通过 {@link DocumentSkewDetector#detectPrecise()} 获取。
+         *
+         * @param refine 是否精修边框，默认不精修
+         * @return 构建器
+         */
+        public Builder setRefine(boolean refine) {
+            mRefine = refine;
+            return this;
+        }
+
+        /**
+         * 判断是否精修边框
+         *
+         * @return 需要精修边框时返回 true
+         */
+        protected boolean isRefine() {
+            return mRefine;
         }
 
         /**
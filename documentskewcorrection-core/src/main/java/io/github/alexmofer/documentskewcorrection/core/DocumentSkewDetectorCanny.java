@@ -15,33 +15,245 @@
  */
 package io.github.alexmofer.documentskewcorrection.core;
 
+import android.content.Context;
 import android.graphics.Bitmap;
+import android.net.Uri;
 
 import androidx.annotation.Keep;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
 
 /**
  * 文档探测器
- * 将 RGB_565 原图转灰度图保存，检测边框时先将灰度图高斯模糊再检测边框再二值化（该检测过程会使用不同的参数执行多次），然后计算得到边框数值。
- * 由于运算过程存在多次转换，因此不建议使用过大的位图，默认限定最大尺寸为 500。
+ * 将 RGB_565 原图转灰度图保存，检测边框时先将灰度图高斯模糊再检测边框（该检测过程会使用不同的参数执行多次，同一模糊结果复用于不同的检测阈值），然后计算得到边框数值。
+ * 由于运算过程存在多次转换，因此不建议使用过大的位图，默认限定最大尺寸为 500；超出时在原生层转灰度图的同时区域平均缩小，不创建缩小的位图。
+ * 检测过程默认单线程执行，可通过构建器设置线程数，多线程时结果与单线程一致。
+ * 金字塔模式下不限定最大尺寸，先在约 256 尺寸的小图上检测，再逐层在角点附近精修到原图，得到原图精度的边框。
+ * 设置参数统计后为自适应顺序模式，历史成功率高、耗时短的参数组优先执行。
+ * 可设置预检，在缩略图上快速排除明显没有文档的画面。
+ * 相机帧可直接传入亮度平面，省去转位图与灰度转换。
+ * 视频帧或批量图片可复用同一检测器，通过 {@link #reset(Bitmap)} 传入新的检测图，原生层复用已分配的工作内存；
+ * 此时请以 {@link Builder#setReusable(boolean)} 构建，检测被取消后同样保留工作内存。
  * Created by Alex on 2025/5/20.
  */
 @Keep
 public final class DocumentSkewDetectorCanny extends DocumentSkewDetector {
 
-    private DocumentSkewDetectorCanny(long nativePrt, int width, int height) {
-        super(nativePrt, width, height);
+    private static final int[] BLUR_SIZES = {3, 7, 11, 15};// 与 native 参数表一致
+    private static final int[] CANNY_THRESHOLDS = {100, 150, 300};// 与 native 参数表一致
+    private static final int PARAMETER_COUNT = BLUR_SIZES.length * CANNY_THRESHOLDS.length;
+    static final int TASK_COUNT = PARAMETER_COUNT * 2;// 原图与直方图均衡化图各执行一遍全部参数组
+    @Nullable
+    private final DocumentSkewDetectorCannyStatistics mStatistics;
+    private final float mMaxSize;
+    private final boolean mPyramid;
+
+    private DocumentSkewDetectorCanny(long nativePrt, int width, int height,
+                                      @Nullable DocumentSkewDetectorCannyStatistics statistics,
+                                      float maxSize, boolean pyramid, int orientation) {
+        super(nativePrt, width, height, orientation);
+        mStatistics = statistics;
+        mMaxSize = maxSize;
+        mPyramid = pyramid;
+    }
+
+    /**
+     * 重置检测图
+     * 位图在原生层转灰度图并缩小到构建器的最大尺寸，覆盖在已分配的内存上；帧尺寸不变时，
+     * 检测所用的灰度图、金字塔、高斯模糊、边缘图及轮廓容器均不再重新分配。重置同时清除取消状态。
+     * 设置了参数统计时，同时以统计的当前自适应顺序更新任务执行顺序。
+     * 不可与检测同时调用。
+     *
+     * @param image 位图，仅支持 ARGB_8888 与 RGB_565 格式，调用方负责回收
+     * @throws Exception 重置失败
+     */
+    public synchronized void reset(Bitmap image) throws Exception {
+        if (isReleased()) {
+            throw new Exception("Detector is released.");
+        }
+        if (image == null) {
+            throw new Exception("Image is null.");
+        }
+        if (image.isRecycled()) {
+            throw new Exception("Image is recycled.");
+        }
+        final int width = getTargetSize(image.getWidth(), image.getWidth(), image.getHeight(),
+                mMaxSize, mPyramid);
+        final int height = getTargetSize(image.getHeight(), image.getWidth(), image.getHeight(),
+                mMaxSize, mPyramid);
+        if (!DR_DocumentSkewDetectorCanny_reset(getNativePrt(), image, width, height,
+                mStatistics == null ? null : mStatistics.getOrder())) {
+            throw new Exception("Reset fail.");
+        }
+        setSize(width, height);
+    }
+
+    /**
+     * 以亮度平面重置检测图
+     * 与 {@link #reset(Bitmap)} 相同，输入为相机帧的亮度平面，重置完成后缓冲区即可复用。
+     *
+     * @param yPlane    亮度平面，必须为直接缓冲区
+     * @param width     宽
+     * @param height    高
+     * @param rowStride 行跨度
+     * @throws Exception 重置失败
+     */
+    public synchronized void reset(ByteBuffer yPlane, int width, int height,
+                                   int rowStride) throws Exception {
+        if (isReleased()) {
+            throw new Exception("Detector is released.");
+        }
+        if (yPlane == null || !yPlane.isDirect()) {
+            throw new Exception("Luma is not direct.");
+        }
+        final int targetWidth = getTargetSize(width, width, height, mMaxSize, mPyramid);
+        final int targetHeight = getTargetSize(height, width, height, mMaxSize, mPyramid);
+        if (!DR_DocumentSkewDetectorCanny_resetLuma(getNativePrt(), yPlane,
+                width, height, rowStride, targetWidth, targetHeight,
+                mStatistics == null ? null : mStatistics.getOrder())) {
+            throw new Exception("Reset fail.");
+        }
+        setSize(targetWidth, targetHeight);
+    }
+
+    /**
+     * 获取检测图的目标尺寸
+     *
+     * @param size    待缩放的边长（宽或高）
+     * @param width   原宽
+     * @param height  原高
+     * @param maxSize 最大尺寸
+     * @param pyramid 是否为金字塔模式，金字塔模式下不缩小
+     * @return 目标边长
+     */
+    private static int getTargetSize(int size, int width, int height, float maxSize,
+                                     boolean pyramid) {
+        if (pyramid || (width < maxSize && height < maxSize)) {
+            return size;
+        }
+        return Math.round(Math.min(maxSize / width, maxSize / height) * size);
+    }
+
+    @Nullable
+    @Override
+    public float[] detectPrecise() {
+        if (mStatistics == null) {
+            return super.detectPrecise();
+        }
+        final DocumentSkewDetectionResult result = detectResult();
+        return result == null ? null : result.getPoints();
+    }
+
+    @Nullable
+    @Override
+    public DocumentSkewDetectionResult detectResult(long deadline) {
+        final DocumentSkewDetectionResult result = super.detectResult(deadline);
+        if (mStatistics != null && !isReleased()) {
+            // 每个已执行的任务都计入统计，未检测到文档的任务同样记录
+            final int[] states = new int[TASK_COUNT];
+            final long[] elapsedTimes = new long[TASK_COUNT];
+            if (DR_DocumentSkewDetectorCanny_getTaskRecords(getNativePrt(), states, elapsedTimes)) {
+                mStatistics.record(states, elapsedTimes);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取参数对应的高斯模糊大小
+     *
+     * @param parameter 参数序号，见 {@link DocumentSkewDetectionResult#getParameter()}
+     * @return 高斯模糊大小
+     */
+    public static int getBlurSize(int parameter) {
+        if (parameter < 0 || parameter >= TASK_COUNT) {
+            throw new RuntimeException("Parameter is not valid.");
+        }
+        return BLUR_SIZES[parameter % PARAMETER_COUNT % BLUR_SIZES.length];
+    }
+
+    /**
+     * 获取参数对应的边框检测第二阈值
+     *
+     * @param parameter 参数序号，见 {@link DocumentSkewDetectionResult#getParameter()}
+     * @return 边框检测第二阈值
+     */
+    public static int getCannyThreshold(int parameter) {
+        if (parameter < 0 || parameter >= TASK_COUNT) {
+            throw new RuntimeException("Parameter is not valid.");
+        }
+        return CANNY_THRESHOLDS[parameter % PARAMETER_COUNT / BLUR_SIZES.length];
+    }
+
+    /**
+     * 判断参数是否作用于直方图均衡化后的灰度图
+     *
+     * @param parameter 参数序号，见 {@link DocumentSkewDetectionResult#getParameter()}
+     * @return 作用于直方图均衡化后的灰度图时返回 true
+     */
+    public static boolean isEnhanced(int parameter) {
+        if (parameter < 0 || parameter >= TASK_COUNT) {
+            throw new RuntimeException("Parameter is not valid.");
+        }
+        return parameter >= PARAMETER_COUNT;
     }
 
-    private static native long DR_DocumentSkewDetectorCanny_create(Object image);
+    private static native long DR_DocumentSkewDetectorCanny_create(Object image,
+                                                                   int targetWidth,
+                                                                   int targetHeight, int threads,
+                                                                   int pyramidSize, boolean refine,
+                                                                   int[] order,
+                                                                   float preCheckThreshold,
+                                                                   boolean reusable);
+
+    private static native long DR_DocumentSkewDetectorCanny_createLuma(Object buffer,
+                                                                       int width, int height,
+                                                                       int rowStride,
+                                                                       int targetWidth,
+                                                                       int targetHeight,
+                                                                       int threads,
+                                                                       int pyramidSize,
+                                                                       boolean refine,
+                                                                       int[] order,
+                                                                       float preCheckThreshold,
+                                                                       boolean reusable);
+
+    private static native boolean DR_DocumentSkewDetectorCanny_reset(long nativePrt, Object image,
+                                                                     int targetWidth,
+                                                                     int targetHeight,
+                                                                     int[] order);
+
+    private static native boolean DR_DocumentSkewDetectorCanny_resetLuma(long nativePrt,
+                                                                         Object buffer,
+                                                                         int width, int height,
+                                                                         int rowStride,
+                                                                         int targetWidth,
+                                                                         int targetHeight,
+                                                                         int[] order);
+
+    private static native boolean DR_DocumentSkewDetectorCanny_getTaskRecords(long nativePrt,
+                                                                              int[] states,
+                                                                              long[] elapsedTimes);
 
     /**
      * 构建器
      */
     public static class Builder extends DocumentSkewDetector.Builder {
 
+        private static final int PYRAMID_SIZE = 256;// 金字塔模式粗检测层尺寸
         private final float mMaxSize;
         private Bitmap mImage;
         private boolean mRecycleImage;
+        private int mThreads = 1;
+        private boolean mPyramid;
+        private DocumentSkewDetectorCannyStatistics mStatistics;
+        private float mPreCheckThreshold;
+        private boolean mReusable;
+        private ByteBuffer mLuma;
+        private int mLumaWidth;
+        private int mLumaHeight;
+        private int mLumaRowStride;
 
         public Builder(float maxSize) {
             mMaxSize = maxSize;
@@ -72,42 +284,175 @@ public final class DocumentSkewDetectorCanny extends DocumentSkewDetector {
                     mImage.recycle();
                 }
             }
-            if (image.getWidth() < mMaxSize && image.getHeight() < mMaxSize) {
-                mImage = image;
-                mRecycleImage = recycleImage;
-                return this;
+            mImage = image;
+            mRecycleImage = recycleImage;
+            mLuma = null;
+            return this;
+        }
+
+        /**
+         * 设置亮度平面
+         * 适用于相机帧（YUV_420_888 的 Y 平面或 NV21 的前 width × height 字节），亮度平面即为灰度图，
+         * 原生层直接包装缓冲区，不做 YUV 到 RGB 及灰度的转换，需要时在原生层缩小到最大尺寸。
+         * 构建时会复制或缩小一份数据，构建完成后缓冲区即可复用。
+         *
+         * @param yPlane    亮度平面，必须为直接缓冲区
+         * @param width     宽
+         * @param height    高
+         * @param rowStride 行跨度
+         * @return 构建器
+         */
+        public Builder setLuma(ByteBuffer yPlane, int width, int height, int rowStride) {
+            if (yPlane == null) {
+                throw new RuntimeException("Luma is null.");
+            }
+            if (!yPlane.isDirect()) {
+                throw new RuntimeException("Luma is not direct.");
+            }
+            if (width <= 0 || height <= 0 || rowStride < width
+                    || yPlane.capacity() < (long) rowStride * (height - 1) + width) {
+                throw new RuntimeException("Luma size is not valid.");
+            }
+            if (mImage != null) {
+                if (mRecycleImage) {
+                    mImage.recycle();
+                }
+                mImage = null;
             }
-            // 缩小位图到限定尺寸
-            final float scale = Math.min(mMaxSize / image.getWidth(), mMaxSize / image.getHeight());
-            mImage = Bitmap.createScaledBitmap(image,
-                    Math.round(scale * image.getWidth()),
-                    Math.round(scale * image.getHeight()), true);
-            mRecycleImage = true;
-            if (recycleImage) {
-                image.recycle();
+            mLuma = yPlane;
+            mLumaWidth = width;
+            mLumaHeight = height;
+            mLumaRowStride = rowStride;
+            return this;
+        }
+
+        /**
+         * 设置检测线程数
+         * 多线程时按参数优先级并行检测，优先级更高的参数检测成功后取消剩余检测，结果与单线程一致。
+         *
+         * @param threads 线程数，默认为 1
+         * @return 构建器
+         */
+        public Builder setThreads(int threads) {
+            if (threads < 1) {
+                throw new RuntimeException("Threads must be positive.");
             }
+            mThreads = threads;
+            return this;
+        }
+
+        /**
+         * 设置是否使用金字塔模式
+         * 金字塔模式下位图不会被缩小到最大尺寸，检测结果为原图精度，但会持有原图尺寸的灰度图直到释放。
+         * 以 Uri 设置位图时按是否为金字塔模式决定解码尺寸，因此需在 {@link #setImage(Context, Uri)} 之前设置。
+         *
+         * @param pyramid 是否使用金字塔模式，默认不使用
+         * @return 构建器
+         */
+        public Builder setPyramid(boolean pyramid) {
+            mPyramid = pyramid;
+            return this;
+        }
+
+        /**
+         * 设置参数统计（自适应顺序模式）
+         * 设置后参数组按统计中的历史成功率与单次耗时排序执行，每次检测（{@link DocumentSkewDetector#detectResult()}
+         * 与 {@link DocumentSkewDetector#detectPrecise()}）会将已执行任务的成败与耗时记录到统计中。
+         * 统计可在多个检测器间共用，并可序列化持久化。
+         *
+         * @param statistics 参数统计，默认为空，即按默认优先级执行
+         * @return 构建器
+         */
+        public Builder setStatistics(@Nullable DocumentSkewDetectorCannyStatistics statistics) {
+            mStatistics = statistics;
+            return this;
+        }
+
+        /**
+         * 设置预检阈值
+         * 检测前先在约 64 尺寸的缩略图上，以梯度能量、边缘与中心区域的灰度直方图差异及边缘密度估计画面中存在文档的可能性，
+         * 低于阈值时直接判定未检测到文档，避免无文档画面（实时扫描时很常见）执行全部参数组。
+         * 阈值越大越容易判定为无文档，请按实际场景调整。
+         *
+         * @param threshold 预检阈值，范围为 0 到 1，默认为 0，即跳过预检
+         * @return 构建器
+         */
+        public Builder setPreCheck(float threshold) {
+            mPreCheckThreshold = threshold;
             return this;
         }
 
+        /**
+         * 设置是否复用
+         * 复用的检测器（视频帧或批量图片，通过 {@link DocumentSkewDetectorCanny#reset(Bitmap)} 传入新的检测图）
+         * 检测被取消后保留工作缓冲区，下一帧不再重新分配；不复用时检测被取消后立即释放工作缓冲区，
+         * 只保留检测图，不必等到 {@link DocumentSkewDetector#release()}。
+         *
+         * @param reusable 是否复用，默认不复用
+         * @return 构建器
+         */
+        public Builder setReusable(boolean reusable) {
+            mReusable = reusable;
+            return this;
+        }
+
+        @Override
+        protected int getSampleSize(int width, int height) {
+            // 金字塔模式下按原尺寸解码，否则解码到最长边不小于限定尺寸
+            return mPyramid ? 1 :
+                    calculateSampleSize(Math.max(width, height), (int) Math.ceil(mMaxSize));
+        }
+
         @Override
         public DocumentSkewDetectorCanny build() throws Exception {
+            if (mLuma != null) {
+                return buildLuma();
+            }
             if (mImage == null) {
                 throw new Exception("Image is null.");
             }
             if (mImage.isRecycled()) {
                 throw new Exception("Image is recycled.");
             }
+            // 原生层锁定原图，转灰度图的同时缩小到限定尺寸
+            final int width = getTargetSize(mImage.getWidth(), mImage.getWidth(),
+                    mImage.getHeight(), mMaxSize, mPyramid);
+            final int height = getTargetSize(mImage.getHeight(), mImage.getWidth(),
+                    mImage.getHeight(), mMaxSize, mPyramid);
             try {
-                final long nativePrt = DR_DocumentSkewDetectorCanny_create(mImage);
+                final long nativePrt = DR_DocumentSkewDetectorCanny_create(mImage, width, height,
+                        mThreads, mPyramid ? PYRAMID_SIZE : 0, isRefine(),
+                        mStatistics == null ? null : mStatistics.getOrder(), mPreCheckThreshold,
+                        mReusable);
                 if (nativePrt == 0) {
                     throw new Exception("Create fail.");
                 }
-                return new DocumentSkewDetectorCanny(nativePrt, mImage.getWidth(), mImage.getHeight());
+                return new DocumentSkewDetectorCanny(nativePrt, width, height,
+                        mStatistics, mMaxSize, mPyramid, getOrientation());
             } finally {
                 if (mRecycleImage) {
                     mImage.recycle();
                 }
             }
         }
+
+        private DocumentSkewDetectorCanny buildLuma() throws Exception {
+            // 原生层缩小到限定尺寸
+            final int width = getTargetSize(mLumaWidth, mLumaWidth, mLumaHeight,
+                    mMaxSize, mPyramid);
+            final int height = getTargetSize(mLumaHeight, mLumaWidth, mLumaHeight,
+                    mMaxSize, mPyramid);
+            final long nativePrt = DR_DocumentSkewDetectorCanny_createLuma(mLuma,
+                    mLumaWidth, mLumaHeight, mLumaRowStride, width, height, mThreads,
+                    mPyramid ? PYRAMID_SIZE : 0, isRefine(),
+                    mStatistics == null ? null : mStatistics.getOrder(), mPreCheckThreshold,
+                    mReusable);
+            mLuma = null;
+            if (nativePrt == 0) {
+                throw new Exception("Create fail.");
+            }
+            return new DocumentSkewDetectorCanny(nativePrt, width, height, mStatistics,
+                    mMaxSize, mPyramid, getOrientation());
+        }
     }
 }
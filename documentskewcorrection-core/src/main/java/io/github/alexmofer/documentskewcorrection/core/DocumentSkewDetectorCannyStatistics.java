@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Canny 检测器参数统计
+ * 记录每组参数的执行次数、检测成功次数与单次执行耗时，据此调整参数组的执行顺序：
+ * 成功率高的优先，成功率相同时耗时短的优先。成功率带有先验，未执行过的参数组视为五成，
+ * 执行后未检测到文档的参数组会被逐渐降低优先级，不会因为执行靠前而一直保持在前。
+ * 可序列化，外部自行持久化后在下次启动时注入构建器即可延续统计。
+ * 线程安全，可被多个检测器共用。
+ * Created by Alex on 2025/6/6.
+ */
+public final class DocumentSkewDetectorCannyStatistics implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+    private static final int MAX_TOTAL = 10000;// 执行总次数上限，超出后全部减半，使统计能跟随场景变化
+    private static final int PRIOR_SUCCESSES = 1;// 成功率先验：成功次数
+    private static final int PRIOR_ATTEMPTS = 2;// 成功率先验：执行次数
+    static final int TASK_SKIPPED = 0;// 与 native 一致：未执行
+    static final int TASK_FAILED = 1;// 与 native 一致：执行未检测到
+    static final int TASK_SUCCEEDED = 2;// 与 native 一致：检测成功
+    private final int[] mAttempts = new int[DocumentSkewDetectorCanny.TASK_COUNT];
+    private final int[] mSuccesses = new int[DocumentSkewDetectorCanny.TASK_COUNT];
+    private final long[] mElapsedTimes = new long[DocumentSkewDetectorCanny.TASK_COUNT];
+    private int mTotal;
+
+    /**
+     * 记录一次检测
+     *
+     * @param states       各任务的执行情况，以参数序号为下标
+     * @param elapsedTimes 各任务自身的耗时（纳秒），以参数序号为下标
+     */
+    synchronized void record(int[] states, long[] elapsedTimes) {
+        for (int i = 0; i < mAttempts.length; i++) {
+            if (states[i] == TASK_SKIPPED) {
+                continue;
+            }
+            mAttempts[i]++;
+            if (states[i] == TASK_SUCCEEDED) {
+                mSuccesses[i]++;
+            }
+            mElapsedTimes[i] += elapsedTimes[i];
+            mTotal++;
+        }
+        if (mTotal > MAX_TOTAL) {
+            mTotal = 0;
+            for (int i = 0; i < mAttempts.length; i++) {
+                // 次数减半后保持原平均耗时
+                final long average = getAverageElapsedTime(i);
+                mAttempts[i] /= 2;
+                mSuccesses[i] = Math.min(mSuccesses[i] / 2, mAttempts[i]);
+                mElapsedTimes[i] = average * mAttempts[i];
+                mTotal += mAttempts[i];
+            }
+        }
+    }
+
+    /**
+     * 清空统计
+     */
+    public synchronized void clear() {
+        Arrays.fill(mAttempts, 0);
+        Arrays.fill(mSuccesses, 0);
+        Arrays.fill(mElapsedTimes, 0);
+        mTotal = 0;
+    }
+
+    /**
+     * 获取参数执行的次数
+     *
+     * @param parameter 参数序号，见 {@link DocumentSkewDetectionResult#getParameter()}
+     * @return 执行的次数
+     */
+    public synchronized int getAttemptCount(int parameter) {
+        return mAttempts[parameter];
+    }
+
+    /**
+     * 获取参数检测成功的次数
+     *
+     * @param parameter 参数序号，见 {@link DocumentSkewDetectionResult#getParameter()}
+     * @return 检测成功的次数
+     */
+    public synchronized int getSuccessCount(int parameter) {
+        return mSuccesses[parameter];
+    }
+
+    /**
+     * 获取参数检测成功率
+     *
+     * @param parameter 参数序号，见 {@link DocumentSkewDetectionResult#getParameter()}
+     * @return 带先验的成功率，未执行过时为 0.5
+     */
+    public synchronized float getSuccessRate(int parameter) {
+        return (float) (mSuccesses[parameter] + PRIOR_SUCCESSES)
+                / (mAttempts[parameter] + PRIOR_ATTEMPTS);
+    }
+
+    /**
+     * 获取参数单次执行的平均耗时
+     * 仅为该参数自身的边缘检测与边框计算耗时，不含同一次检测中其他参数的耗时。
+     *
+     * @param parameter 参数序号，见 {@link DocumentSkewDetectionResult#getParameter()}
+     * @return 平均耗时（纳秒），没有执行记录时返回 0
+     */
+    public synchronized long getAverageElapsedTime(int parameter) {
+        final int count = mAttempts[parameter];
+        return count == 0 ? 0 : mElapsedTimes[parameter] / count;
+    }
+
+    /**
+     * 获取参数组执行顺序
+     * 成功率高的优先，成功率相同时平均耗时短的优先（没有执行记录的视为 0，优先尝试），其余保持默认优先级。
+     *
+     * @return 执行顺序
+     */
+    synchronized int[] getOrder() {
+        final int count = mAttempts.length;
+        final Integer[] order = new Integer[count];
+        final float[] rates = new float[count];
+        final long[] averages = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            rates[i] = getSuccessRate(i);
+            averages[i] = getAverageElapsedTime(i);
+        }
+        Arrays.sort(order, (o1, o2) -> {
+            if (rates[o1] != rates[o2]) {
+                return Float.compare(rates[o2], rates[o1]);
+            }
+            if (averages[o1] != averages[o2]) {
+                return Long.compare(averages[o1], averages[o2]);
+            }
+            return Integer.compare(o1, o2);
+        });
+        final int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+}
@@ -17,6 +17,8 @@ package io.github.alexmofer.documentskewcorrection.core;
 
 import androidx.annotation.Keep;
 
+import java.nio.ByteBuffer;
+
 /**
  * 文档探测器
  * 位图处理算法已被外部代理
@@ -25,11 +27,17 @@ import androidx.annotation.Keep;
 @Keep
 public final class DocumentSkewDetectorDelegated extends DocumentSkewDetector {
 
-    private DocumentSkewDetectorDelegated(long nativePrt, int width, int height) {
-        super(nativePrt, width, height);
+    private DocumentSkewDetectorDelegated(long nativePrt, int width, int height,
+                                          int orientation) {
+        super(nativePrt, width, height, orientation);
     }
 
-    private static native long DR_DocumentSkewDetectorDelegated_create(int width, int height, byte[] pixels);
+    private static native long DR_DocumentSkewDetectorDelegated_create(int width, int height, byte[] pixels,
+                                                                       boolean refine);
+
+    private static native long DR_DocumentSkewDetectorDelegated_createDirect(int width, int height,
+                                                                             Object buffer,
+                                                                             boolean refine);
 
     /**
      * 构建器
@@ -39,17 +47,51 @@ public final class DocumentSkewDetectorDelegated extends DocumentSkewDetector {
         protected int mWidth;
         protected int mHeight;
         protected byte[] mPixels;
+        protected ByteBuffer mBuffer;// 直接缓冲区，与 mPixels 只能设置其一
+
+        /**
+         * 获取可写入的直接缓冲区
+         * 缓冲区内存位于 Java 堆外，检测器直接包装其数据，既不复制也不固定数组。
+         * 每次获取都分配新的缓冲区并清空 mPixels，构建后缓冲区归检测器所有，不同检测器之间不共用内存。
+         *
+         * @param width  宽
+         * @param height 高
+         * @return 容量为 width × height 的直接缓冲区，已设置为 mBuffer
+         */
+        protected ByteBuffer obtainBuffer(int width, int height) {
+            mBuffer = ByteBuffer.allocateDirect(width * height);
+            mPixels = null;
+            return mBuffer;
+        }
 
+        /**
+         * 构建
+         * 检测器直接使用 mPixels 或 mBuffer 的内存，构建后两者均被清空，下次构建须重新设置。
+         *
+         * @return 文档矫正器
+         * @throws Exception 失败信息
+         */
         @Override
         public DocumentSkewDetectorDelegated build() throws Exception {
-            if (mWidth <= 0 || mHeight <= 0 || mPixels == null) {
+            if (mWidth <= 0 || mHeight <= 0 || (mPixels == null) == (mBuffer == null)) {
+                throw new IllegalArgumentException();
+            }
+            if (mBuffer != null && !mBuffer.isDirect()) {
                 throw new IllegalArgumentException();
             }
-            final long nativePrt = DR_DocumentSkewDetectorDelegated_create(mWidth, mHeight, mPixels);
+            final byte[] pixels = mPixels;
+            final ByteBuffer buffer = mBuffer;
+            mPixels = null;
+            mBuffer = null;
+            final long nativePrt = buffer != null
+                    ? DR_DocumentSkewDetectorDelegated_createDirect(mWidth, mHeight, buffer,
+                    isRefine())
+                    : DR_DocumentSkewDetectorDelegated_create(mWidth, mHeight, pixels,
+                    isRefine());
             if (nativePrt == 0) {
                 throw new Exception("Create fail.");
             }
-            return new DocumentSkewDetectorDelegated(nativePrt, mWidth, mHeight);
+            return new DocumentSkewDetectorDelegated(nativePrt, mWidth, mHeight, getOrientation());
         }
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.core;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Keep;
+
+/**
+ * 文档探测器
+ * 将原图转灰度图保存，检测边框时只做一次边缘检测与概率霍夫直线检测，再将线段聚类为四条主边并求交点得到边框。
+ * 适用于文档边缘贴近画面边界或被部分遮挡、轮廓检测失败的图片，缺失一条边时以画面边界代替。
+ * 默认限定最大尺寸为 500。
+ * Created by Alex on 2025/6/3.
+ */
+@Keep
+public final class DocumentSkewDetectorLines extends DocumentSkewDetector {
+
+    private DocumentSkewDetectorLines(long nativePrt, int width, int height, int orientation) {
+        super(nativePrt, width, height, orientation);
+    }
+
+    private static native long DR_DocumentSkewDetectorLines_create(Object image, boolean refine);
+
+    /**
+     * 构建器
+     */
+    public static class Builder extends DocumentSkewDetector.Builder {
+
+        private final float mMaxSize;
+        private Bitmap mImage;
+        private boolean mRecycleImage;
+
+        public Builder(float maxSize) {
+            mMaxSize = maxSize;
+        }
+
+        public Builder() {
+            this(500);
+        }
+
+        @Override
+        public Builder setImage(Bitmap image, boolean recycleImage) {
+            if (image == null) {
+                throw new RuntimeException("Image is null.");
+            }
+            if (image.isRecycled()) {
+                throw new RuntimeException("Image is recycled.");
+            }
+            if (image.getConfig() != Bitmap.Config.ARGB_8888
+                    && image.getConfig() != Bitmap.Config.RGB_565) {
+                // 注意 ARGB_8888 格式的位图会强制作为未预乘的位图处理，传入带透明度的位图会检测不准确。
+                throw new RuntimeException("Image format is not support.");
+            }
+            if (mImage != null) {
+                if (mRecycleImage) {
+                    mImage.recycle();
+                }
+            }
+            mImage = image;
+            mRecycleImage = recycleImage;
+            return this;
+        }
+
+        @Override
+        protected int getSampleSize(int width, int height) {
+            // 解码到最长边不小于限定尺寸
+            return calculateSampleSize(Math.max(width, height), (int) Math.ceil(mMaxSize));
+        }
+
+        @Override
+        public DocumentSkewDetectorLines build() throws Exception {
+            if (mImage == null) {
+                throw new Exception("Image is null.");
+            }
+            if (mImage.isRecycled()) {
+                throw new Exception("Image is recycled.");
+            }
+            final Bitmap image;
+            if (mImage.getWidth() < mMaxSize && mImage.getHeight() < mMaxSize) {
+                image = mImage;
+            } else {
+                // 缩小位图到限定尺寸
+                final float scale = Math.min(mMaxSize / mImage.getWidth(),
+                        mMaxSize / mImage.getHeight());
+                image = Bitmap.createScaledBitmap(mImage,
+                        Math.round(scale * mImage.getWidth()),
+                        Math.round(scale * mImage.getHeight()), true);
+            }
+            try {
+                final long nativePrt = DR_DocumentSkewDetectorLines_create(image, isRefine());
+                if (nativePrt == 0) {
+                    throw new Exception("Create fail.");
+                }
+                return new DocumentSkewDetectorLines(nativePrt, image.getWidth(), image.getHeight(),
+                        getOrientation());
+            } finally {
+                if (image != mImage) {
+                    image.recycle();
+                }
+                if (mRecycleImage) {
+                    mImage.recycle();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.core;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Uri 位图解码器
+ * 每张图片只打开一次内容：文件描述符可定位时，读取 EXIF 与尺寸后定位回开头直接解码；
+ * 不可定位时（如管道、云端内容提供者）以带标记的缓冲流读取文件头，读取 EXIF 与尺寸后回到标记处继续解码，
+ * 仅当文件头超出标记范围时才重新打开一次。
+ * 支持只解码原图中的一个区域，或在同一次打开中依次解码多个区域。
+ * documentskewcorrection-hms 模块中的同名类为其精简版本，只保留整图解码。
+ * Created by Alex on 2025/6/9.
+ */
+final class UriBitmapDecoder {
+
+    private static final int HEADER_LIMIT = 256 * 1024;// 文件头缓冲上限，JPEG 的 EXIF 段不超过 64K
+    private final Context mContext;
+    private final Uri mUri;
+
+    UriBitmapDecoder(Context context, @NonNull Uri uri) {
+        mContext = context;
+        mUri = uri;
+    }
+
+    /**
+     * 解码
+     *
+     * @param mutable       是否可修改
+     * @param config        格式
+     * @param premultiplied 是否预乘，未预乘的位图不可用于显示
+     * @param calculator    采样率计算器，为空时按原尺寸解码
+     * @return 解码结果
+     * @throws Exception 解码失败
+     */
+    Result decode(boolean mutable, Bitmap.Config config, boolean premultiplied,
+                  @Nullable SampleSizeCalculator calculator) throws Exception {
+        final BitmapFactory.Options options = newOptions(config, premultiplied);
+        options.inMutable = mutable;
+        return read(options, new Decoding<Result>() {
+            @Override
+            public Result decode(FileDescriptor fd, int orientation) throws Exception {
+                final int width = options.outWidth;
+                final int height = options.outHeight;
+                setSampleSize(options, calculator);
+                return newResult(BitmapFactory.decodeFileDescriptor(fd, null, options),
+                        orientation, width, height, 0, 0);
+            }
+
+            @Override
+            public Result decode(InputStream input, int orientation) throws Exception {
+                final int width = options.outWidth;
+                final int height = options.outHeight;
+                setSampleSize(options, calculator);
+                return newResult(BitmapFactory.decodeStream(input, null, options),
+                        orientation, width, height, 0, 0);
+            }
+        });
+    }
+
+    /**
+     * 区域解码
+     * 只解码原图中的一个矩形区域，区域由读取到的原图尺寸与 EXIF 方向计算得到。
+     *
+     * @param config        格式
+     * @param premultiplied 是否预乘，未预乘的位图不可用于显示
+     * @param calculator    区域计算器
+     * @return 解码结果，位图为区域内的部分
+     * @throws Exception 解码失败
+     */
+    Result decodeRegion(Bitmap.Config config, boolean premultiplied,
+                        RegionCalculator calculator) throws Exception {
+        final BitmapFactory.Options options = newOptions(config, premultiplied);
+        return read(options, new Decoding<Result>() {
+            @Override
+            public Result decode(FileDescriptor fd, int orientation) throws Exception {
+                return decodeRegion(BitmapRegionDecoder.newInstance(fd, false),
+                        orientation, options, calculator);
+            }
+
+            @Override
+            public Result decode(InputStream input, int orientation) throws Exception {
+                return decodeRegion(BitmapRegionDecoder.newInstance(input, false),
+                        orientation, options, calculator);
+            }
+        });
+    }
+
+    /**
+     * 多区域解码
+     * 只打开一次内容，读取 EXIF 与尺寸后创建区域解码器并交给读取器依次解码多个区域，读取器返回后关闭。
+     *
+     * @param reader 区域读取器
+     * @param <T>    读取结果类型
+     * @return 读取结果
+     * @throws Exception 解码失败
+     */
+    <T> T decodeRegions(RegionReader<T> reader) throws Exception {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        return read(options, new Decoding<T>() {
+            @Override
+            public T decode(FileDescriptor fd, int orientation) throws Exception {
+                return readRegions(BitmapRegionDecoder.newInstance(fd, false),
+                        orientation, options, reader);
+            }
+
+            @Override
+            public T decode(InputStream input, int orientation) throws Exception {
+                return readRegions(BitmapRegionDecoder.newInstance(input, false),
+                        orientation, options, reader);
+            }
+        });
+    }
+
+    private static BitmapFactory.Options newOptions(Bitmap.Config config,
+                                                    boolean premultiplied) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        options.inPremultiplied = premultiplied;
+        return options;
+    }
+
+    private <T> T read(BitmapFactory.Options options, Decoding<T> decoding) throws Exception {
+        try (final AssetFileDescriptor afd = open()) {
+            final FileDescriptor fd = afd.getFileDescriptor();
+            if (afd.getStartOffset() == 0 && isSeekable(fd)) {
+                return readDescriptor(fd, options, decoding);
+            }
+            return readStream(afd, options, decoding);
+        }
+    }
+
+    private AssetFileDescriptor open() throws Exception {
+        final AssetFileDescriptor afd =
+                mContext.getContentResolver().openAssetFileDescriptor(mUri, "r");
+        if (afd == null) {
+            throw new Exception("Cannot open uri.");
+        }
+        return afd;
+    }
+
+    private static boolean isSeekable(FileDescriptor fd) {
+        try {
+            Os.lseek(fd, 0, OsConstants.SEEK_SET);
+            return true;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    private <T> T readDescriptor(FileDescriptor fd, BitmapFactory.Options options,
+                                 Decoding<T> decoding) throws Exception {
+        final int orientation = new ExifInterface(fd).getAttributeInt(
+                ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        Os.lseek(fd, 0, OsConstants.SEEK_SET);
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFileDescriptor(fd, null, options);
+        options.inJustDecodeBounds = false;
+        checkBounds(options);
+        Os.lseek(fd, 0, OsConstants.SEEK_SET);
+        return decoding.decode(fd, orientation);
+    }
+
+    private <T> T readStream(AssetFileDescriptor afd, BitmapFactory.Options options,
+                             Decoding<T> decoding) throws Exception {
+        InputStream input = new BufferedInputStream(afd.createInputStream(), HEADER_LIMIT);
+        try {
+            input.mark(HEADER_LIMIT);
+            final int orientation = new ExifInterface(input).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            input = rewind(input);
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(input, null, options);
+            options.inJustDecodeBounds = false;
+            checkBounds(options);
+            input = rewind(input);
+            return decoding.decode(input, orientation);
+        } finally {
+            input.close();
+        }
+    }
+
+    private InputStream rewind(InputStream input) throws Exception {
+        try {
+            input.reset();
+            input.mark(HEADER_LIMIT);
+            return input;
+        } catch (IOException e) {
+            // 文件头超出缓冲范围，重新打开
+            input.close();
+            final InputStream reopened = new BufferedInputStream(open().createInputStream(),
+                    HEADER_LIMIT);
+            reopened.mark(HEADER_LIMIT);
+            return reopened;
+        }
+    }
+
+    private static void checkBounds(BitmapFactory.Options options) throws Exception {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new Exception("Not a bitmap uri.");
+        }
+    }
+
+    private static void setSampleSize(BitmapFactory.Options options,
+                                      @Nullable SampleSizeCalculator calculator) {
+        if (calculator != null) {
+            // 解码时直接缩小到接近所需尺寸
+            options.inSampleSize = Math.max(1,
+                    calculator.calculate(options.outWidth, options.outHeight));
+        }
+    }
+
+    private static Result decodeRegion(@Nullable BitmapRegionDecoder decoder, int orientation,
+                                       BitmapFactory.Options options,
+                                       RegionCalculator calculator) throws Exception {
+        if (decoder == null) {
+            throw new Exception("Cannot get bitmap from uri.");
+        }
+        try {
+            final int width = options.outWidth;
+            final int height = options.outHeight;
+            final Rect region = calculator.calculate(width, height, orientation);
+            if (region == null || !region.intersect(0, 0, width, height)) {
+                throw new Exception("Region is not valid.");
+            }
+            return newResult(decoder.decodeRegion(region, options), orientation, width, height,
+                    region.left, region.top);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    private static <T> T readRegions(@Nullable BitmapRegionDecoder decoder, int orientation,
+                                     BitmapFactory.Options options,
+                                     RegionReader<T> reader) throws Exception {
+        if (decoder == null) {
+            throw new Exception("Cannot get bitmap from uri.");
+        }
+        try {
+            return reader.read(decoder, options.outWidth, options.outHeight, orientation);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    private static Result newResult(@Nullable Bitmap bitmap, int orientation,
+                                    int sourceWidth, int sourceHeight,
+                                    int left, int top) throws Exception {
+        if (bitmap == null) {
+            throw new Exception("Cannot get bitmap from uri.");
+        }
+        return new Result(bitmap, orientation, sourceWidth, sourceHeight, left, top);
+    }
+
+    /**
+     * 解码方式
+     * 文件头读取完毕、已定位回开头后执行真正的解码。
+     */
+    private interface Decoding<T> {
+
+        T decode(FileDescriptor fd, int orientation) throws Exception;
+
+        T decode(InputStream input, int orientation) throws Exception;
+    }
+
+    /**
+     * 区域计算器
+     */
+    interface RegionCalculator {
+
+        /**
+         * 计算解码区域
+         *
+         * @param width       原图宽
+         * @param height      原图高
+         * @param orientation EXIF 方向
+         * @return 原图坐标系下的解码区域
+         */
+        Rect calculate(int width, int height, int orientation);
+    }
+
+    /**
+     * 区域读取器
+     *
+     * @param <T> 读取结果类型
+     */
+    interface RegionReader<T> {
+
+        /**
+         * 读取
+         * 区域解码器仅在该方法内有效。
+         *
+         * @param decoder     区域解码器
+         * @param width       原图宽
+         * @param height      原图高
+         * @param orientation EXIF 方向
+         * @return 读取结果
+         * @throws Exception 读取失败
+         */
+        T read(BitmapRegionDecoder decoder, int width, int height, int orientation)
+                throws Exception;
+    }
+
+    /**
+     * 采样率计算器
+     */
+    interface SampleSizeCalculator {
+
+        /**
+         * 计算采样率
+         *
+         * @param width  原图宽
+         * @param height 原图高
+         * @return 采样率
+         */
+        int calculate(int width, int height);
+    }
+
+    /**
+     * 解码结果
+     */
+    static final class Result {
+        private final Bitmap mBitmap;
+        private final int mOrientation;
+        private final int mSourceWidth;
+        private final int mSourceHeight;
+        private final int mLeft;
+        private final int mTop;
+
+        Result(Bitmap bitmap, int orientation, int sourceWidth, int sourceHeight,
+               int left, int top) {
+            mBitmap = bitmap;
+            mOrientation = orientation;
+            mSourceWidth = sourceWidth;
+            mSourceHeight = sourceHeight;
+            mLeft = left;
+            mTop = top;
+        }
+
+        /**
+         * 获取位图
+         *
+         * @return 未处理 EXIF 方向的位图
+         */
+        Bitmap getBitmap() {
+            return mBitmap;
+        }
+
+        /**
+         * 获取 EXIF 方向
+         *
+         * @return EXIF 方向
+         */
+        int getOrientation() {
+            return mOrientation;
+        }
+
+        /**
+         * 获取原图宽
+         *
+         * @return 原图宽（未采样、未处理 EXIF 方向）
+         */
+        int getSourceWidth() {
+            return mSourceWidth;
+        }
+
+        /**
+         * 获取原图高
+         *
+         * @return 原图高（未采样、未处理 EXIF 方向）
+         */
+        int getSourceHeight() {
+            return mSourceHeight;
+        }
+
+        /**
+         * 获取位图在原图中的左边界
+         *
+         * @return 区域解码时为区域左边界，否则为 0
+         */
+        int getLeft() {
+            return mLeft;
+        }
+
+        /**
+         * 获取位图在原图中的上边界
+         *
+         * @return 区域解码时为区域上边界，否则为 0
+         */
+        int getTop() {
+            return mTop;
+        }
+    }
+}
@@ -18,10 +18,10 @@ package io.github.alexmofer.documentskewcorrection.core;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.exifinterface.media.ExifInterface;
 
 import java.io.InputStream;
@@ -35,6 +35,8 @@ import java.io.InputStream;
  */
 final class Utils {
 
+    private static final float MILLIMETERS_PER_INCH = 25.4f;
+
     private Utils() {
         //no instance
     }
@@ -49,6 +51,12 @@ final class Utils {
      * @noinspection BooleanMethodIsAlwaysInverted
      */
     public static boolean isBitmap(Context context, @NonNull Uri uri) throws Exception {
+        final BitmapFactory.Options options = decodeBounds(context, uri);
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+
+    private static BitmapFactory.Options decodeBounds(Context context,
+                                                      @NonNull Uri uri) throws Exception {
         try (final InputStream input = context.getContentResolver().openInputStream(uri)) {
             if (input == null) {
                 throw new Exception("Cannot open uri.");
@@ -56,118 +64,230 @@ final class Utils {
             final BitmapFactory.Options options = new BitmapFactory.Options();
             options.inJustDecodeBounds = true;
             BitmapFactory.decodeStream(input, null, options);
-            return options.outWidth > 0 && options.outHeight > 0;
+            return options;
         }
     }
 
-    private static int getExifOrientation(Context context, @NonNull Uri uri) throws Exception {
-        try (final InputStream input = context.getContentResolver().openInputStream(uri)) {
-            if (input == null) {
-                throw new Exception("Cannot open uri.");
-            }
-            final ExifInterface exif = new ExifInterface(input);
-            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
-                    ExifInterface.ORIENTATION_NORMAL);
+    /**
+     * 计算采样率
+     * 取 2 的幂，使采样后的边长不小于所需边长；JPEG 解码时 2 的幂采样在 DCT 域完成，无需解码全尺寸。
+     *
+     * @param length   原边长
+     * @param required 所需边长
+     * @return 采样率
+     */
+    public static int calculateSampleSize(int length, int required) {
+        int sampleSize = 1;
+        if (required <= 0) {
+            return sampleSize;
         }
+        while (length / (sampleSize * 2) >= required) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
     }
 
     /**
-     * 从 Uri 获取位图
+     * 从 Uri 解码位图
+     * 不处理 EXIF 方向，方向随结果返回，由使用方作为坐标变换处理，避免再创建一张旋转后的全尺寸位图。
      *
      * @param context       Context
      * @param uri           Uri
      * @param mutable       是否可修改
      * @param config        格式
      * @param premultiplied 是否预乘，未预乘的位图不可用于显示
-     * @return 位图
+     * @param calculator    采样率计算器，为空时按原尺寸解码
+     * @return 解码结果
+     */
+    public static UriBitmapDecoder.Result decodeUri(Context context, @NonNull Uri uri,
+                                                    boolean mutable, Bitmap.Config config,
+                                                    boolean premultiplied,
+                                                    @Nullable UriBitmapDecoder.SampleSizeCalculator calculator)
+            throws Exception {
+        return new UriBitmapDecoder(context, uri).decode(mutable, config, premultiplied,
+                calculator);
+    }
+
+    /**
+     * 判断 EXIF 方向是否交换宽高
+     *
+     * @param orientation EXIF 方向
+     * @return 交换宽高时返回 true
      */
-    public static Bitmap fromUri(Context context, @NonNull Uri uri,
-                                 boolean mutable, Bitmap.Config config, boolean premultiplied) throws Exception {
-        if (!isBitmap(context, uri)) {
-            throw new Exception("Not a bitmap uri.");
+    public static boolean isTransposed(int orientation) {
+        return orientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_90
+                || orientation == ExifInterface.ORIENTATION_TRANSVERSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * 将原图上的边框映射到按 EXIF 方向摆正后的图上
+     * 点的顺序按摆正后的位置重新排列，仍为左上、右上、左下、右下。
+     *
+     * @param points      原图上的边框
+     * @param width       原图宽
+     * @param height      原图高
+     * @param orientation EXIF 方向
+     * @return 摆正后的图上的边框
+     */
+    public static float[] toOriented(float[] points, int width, int height, int orientation) {
+        if (!isOriented(orientation)) {
+            return points;
         }
-        final int orientation = getExifOrientation(context, uri);
-        try (final InputStream input = context.getContentResolver().openInputStream(uri)) {
-            if (input == null) {
-                throw new Exception("Cannot get bitmap from uri.");
-            }
-            final BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inMutable = mutable;
-            options.inPreferredConfig = config;
-            options.inPremultiplied = premultiplied;
-            final Bitmap original = BitmapFactory.decodeStream(input, null, options);
-            if (original == null) {
-                throw new Exception("Cannot get bitmap from uri.");
+        final float[] result = new float[8];
+        final float[] point = new float[2];
+        for (int i = 0; i < 4; i++) {
+            // 原图的第 i 个角摆正后所在的角，即为该点的新序号
+            toOriented((i & 1) == 0 ? 0 : width - 1, (i & 2) == 0 ? 0 : height - 1,
+                    width, height, orientation, point);
+            final int index = (point[0] > 0 ? 1 : 0) + (point[1] > 0 ? 2 : 0);
+            toOriented(points[i * 2], points[i * 2 + 1], width, height, orientation, point);
+            result[index * 2] = point[0];
+            result[index * 2 + 1] = point[1];
+        }
+        return result;
+    }
+
+    /**
+     * 将按 EXIF 方向摆正后的图上的边框映射回原图
+     * 点的顺序保持不变，即仍按摆正后的左上、右上、左下、右下排列，校正结果因此是摆正的。
+     *
+     * @param points      摆正后的图上的边框
+     * @param width       原图宽
+     * @param height      原图高
+     * @param orientation EXIF 方向
+     * @return 原图上的边框
+     */
+    public static float[] toRaw(float[] points, int width, int height, int orientation) {
+        if (!isOriented(orientation)) {
+            return points;
+        }
+        final float[] result = new float[8];
+        for (int i = 0; i < 8; i += 2) {
+            final float x = points[i];
+            final float y = points[i + 1];
+            final float rx;
+            final float ry;
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                    rx = width - 1 - x;
+                    ry = y;
+                    break;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    rx = width - 1 - x;
+                    ry = height - 1 - y;
+                    break;
+                case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                    rx = x;
+                    ry = height - 1 - y;
+                    break;
+                case ExifInterface.ORIENTATION_TRANSPOSE:
+                    rx = y;
+                    ry = x;
+                    break;
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    rx = y;
+                    ry = height - 1 - x;
+                    break;
+                case ExifInterface.ORIENTATION_TRANSVERSE:
+                    rx = width - 1 - y;
+                    ry = height - 1 - x;
+                    break;
+                default:
+                    // ExifInterface.ORIENTATION_ROTATE_270
+                    rx = width - 1 - y;
+                    ry = x;
+                    break;
             }
-            // 处理 EXIF ORIENTATION
-            if (orientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL) {
+            result[i] = rx;
+            result[i + 1] = ry;
+        }
+        return result;
+    }
+
+    private static boolean isOriented(int orientation) {
+        return orientation >= ExifInterface.ORIENTATION_FLIP_HORIZONTAL
+                && orientation <= ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    private static void toOriented(float x, float y, int width, int height, int orientation,
+                                   float[] point) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
                 // 水平翻转
-                final Matrix matrix = new Matrix();
-                matrix.setScale(-1, 1);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_ROTATE_180) {
+                point[0] = width - 1 - x;
+                point[1] = y;
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
                 // 180度旋转
-                final Matrix matrix = new Matrix();
-                matrix.setRotate(180);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_FLIP_VERTICAL) {
+                point[0] = width - 1 - x;
+                point[1] = height - 1 - y;
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
                 // 垂直翻转
-                final Matrix matrix = new Matrix();
-                matrix.setScale(1, -1);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_TRANSPOSE) {
+                point[0] = x;
+                point[1] = height - 1 - y;
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
                 // 垂直翻转再旋转90度
-                final Matrix matrix = new Matrix();
-                matrix.setScale(1, -1);
-                matrix.postRotate(90);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_ROTATE_90) {
+                point[0] = y;
+                point[1] = x;
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
                 // 旋转90度
-                final Matrix matrix = new Matrix();
-                matrix.setRotate(90);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_TRANSVERSE) {
+                point[0] = height - 1 - y;
+                point[1] = x;
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
                 // 旋转90度再垂直翻转
-                final Matrix matrix = new Matrix();
-                matrix.setRotate(90);
-                matrix.postScale(1, -1);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_ROTATE_270) {
+                point[0] = height - 1 - y;
+                point[1] = width - 1 - x;
+                break;
+            default:
                 // 旋转270度
-                final Matrix matrix = new Matrix();
-                matrix.setRotate(270);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            // 无需处理
-            return original;
+                point[0] = y;
+                point[1] = width - 1 - x;
+                break;
+        }
+    }
+
+    /**
+     * 计算校正输出尺寸
+     * 设置了输出尺寸时直接使用；否则按 DPI 与纸张尺寸（纸张方向与边框方向一致）或边框尺寸计算，超出最大尺寸时等比缩小。
+     *
+     * @param points        边框四个点（左上、右上、左下、右下）
+     * @param outputWidth   输出宽，不大于 0 时不使用
+     * @param outputHeight  输出高，不大于 0 时不使用
+     * @param maxOutputSize 最大输出尺寸，不大于 0 时不限制
+     * @param dpi           DPI，不大于 0 时不使用
+     * @param paperWidth    纸张宽（毫米）
+     * @param paperHeight   纸张高（毫米）
+     * @return 输出宽高
+     */
+    public static int[] calculateOutputSize(float[] points, int outputWidth, int outputHeight,
+                                            int maxOutputSize, float dpi,
+                                            float paperWidth, float paperHeight) {
+        if (outputWidth > 0 && outputHeight > 0) {
+            return new int[]{outputWidth, outputHeight};
+        }
+        double width = (calculatePointToPoint(points[0], points[1], points[2], points[3])
+                + calculatePointToPoint(points[4], points[5], points[6], points[7])) * 0.5f;
+        double height = (calculatePointToPoint(points[0], points[1], points[4], points[5])
+                + calculatePointToPoint(points[2], points[3], points[6], points[7])) * 0.5f;
+        if (dpi > 0) {
+            final boolean landscape = width > height;
+            final float longer = Math.max(paperWidth, paperHeight);
+            final float shorter = Math.min(paperWidth, paperHeight);
+            width = (landscape ? longer : shorter) / MILLIMETERS_PER_INCH * dpi;
+            height = (landscape ? shorter : longer) / MILLIMETERS_PER_INCH * dpi;
+        }
+        final double max = Math.max(width, height);
+        if (maxOutputSize > 0 && max > maxOutputSize) {
+            width = width * maxOutputSize / max;
+            height = height * maxOutputSize / max;
         }
+        return new int[]{(int) Math.round(width), (int) Math.round(height)};
     }
 
     /**
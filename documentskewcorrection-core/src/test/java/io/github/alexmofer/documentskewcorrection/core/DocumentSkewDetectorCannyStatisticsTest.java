@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * DocumentSkewDetectorCannyStatistics 单元测试
+ * Created by Alex on 2025/6/17.
+ */
+public class DocumentSkewDetectorCannyStatisticsTest {
+
+    private static final int COUNT = DocumentSkewDetectorCanny.TASK_COUNT;
+
+    /**
+     * 记录一次按顺序执行的检测：列出的任务依次执行，最后一个成功，其余失败
+     */
+    private static void record(DocumentSkewDetectorCannyStatistics statistics, long elapsedTime,
+                               int... tasks) {
+        final int[] states = new int[COUNT];
+        final long[] elapsedTimes = new long[COUNT];
+        for (int i = 0; i < tasks.length; i++) {
+            states[tasks[i]] = i == tasks.length - 1 ?
+                    DocumentSkewDetectorCannyStatistics.TASK_SUCCEEDED :
+                    DocumentSkewDetectorCannyStatistics.TASK_FAILED;
+            elapsedTimes[tasks[i]] = elapsedTime;
+        }
+        statistics.record(states, elapsedTimes);
+    }
+
+    private static int indexOf(int[] order, int task) {
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] == task) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void getOrder_defaultsToPriority() {
+        final int[] order = new DocumentSkewDetectorCannyStatistics().getOrder();
+        assertEquals(COUNT, order.length);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(i, order[i]);
+        }
+    }
+
+    @Test
+    public void record_countsAttemptsAndSuccesses() {
+        final DocumentSkewDetectorCannyStatistics statistics =
+                new DocumentSkewDetectorCannyStatistics();
+        record(statistics, 10, 0, 1, 2);
+        record(statistics, 20, 0, 1);
+        assertEquals(2, statistics.getAttemptCount(0));
+        assertEquals(0, statistics.getSuccessCount(0));
+        assertEquals(2, statistics.getAttemptCount(1));
+        assertEquals(1, statistics.getSuccessCount(1));
+        assertEquals(1, statistics.getAttemptCount(2));
+        assertEquals(1, statistics.getSuccessCount(2));
+        assertEquals(0, statistics.getAttemptCount(3));
+        // 平均耗时为该任务自身的耗时
+        assertEquals(15, statistics.getAverageElapsedTime(1));
+        assertEquals(10, statistics.getAverageElapsedTime(2));
+        assertEquals(0, statistics.getAverageElapsedTime(3));
+        assertEquals(0.5f, statistics.getSuccessRate(3), 0);
+        assertEquals(0.5f, statistics.getSuccessRate(1), 0);
+        assertEquals(2f / 3, statistics.getSuccessRate(2), 1e-6f);
+    }
+
+    @Test
+    public void getOrder_demotesFailingTask() {
+        final DocumentSkewDetectorCannyStatistics statistics =
+                new DocumentSkewDetectorCannyStatistics();
+        // 默认最先执行的任务总是失败
+        for (int i = 0; i < 5; i++) {
+            record(statistics, 10, 0, 1);
+        }
+        final int[] order = statistics.getOrder();
+        assertEquals(1, order[0]);
+        // 失败的任务排在未执行过的任务之后
+        assertEquals(COUNT - 1, indexOf(order, 0));
+    }
+
+    @Test
+    public void getOrder_prefersFasterTaskOnSameRate() {
+        final DocumentSkewDetectorCannyStatistics statistics =
+                new DocumentSkewDetectorCannyStatistics();
+        record(statistics, 50, 3);
+        record(statistics, 10, 7);
+        final int[] order = statistics.getOrder();
+        assertEquals(7, order[0]);
+        assertEquals(3, order[1]);
+    }
+
+    @Test
+    public void record_halvesWhenFull() {
+        final DocumentSkewDetectorCannyStatistics statistics =
+                new DocumentSkewDetectorCannyStatistics();
+        for (int i = 0; i < 10001; i++) {
+            record(statistics, 10, 5);
+        }
+        assertTrue(statistics.getAttemptCount(5) <= 10000);
+        assertEquals(statistics.getAttemptCount(5), statistics.getSuccessCount(5));
+        assertEquals(10, statistics.getAverageElapsedTime(5));
+        assertEquals(5, statistics.getOrder()[0]);
+    }
+
+    @Test
+    public void clear() {
+        final DocumentSkewDetectorCannyStatistics statistics =
+                new DocumentSkewDetectorCannyStatistics();
+        record(statistics, 10, 0, 1, 2);
+        statistics.clear();
+        assertEquals(0, statistics.getAttemptCount(0));
+        assertEquals(0, statistics.getSuccessCount(2));
+        assertEquals(0, statistics.getOrder()[0]);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.core;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Utils 单元测试
+ * Created by Alex on 2025/6/17.
+ */
+public class UtilsTest {
+
+    private static final float DELTA = 1e-4f;
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
+    // 原图上的边框（左上、右上、左下、右下），四个点互不对称，便于发现错位
+    private static final float[] POINTS = {20, 10, 370, 30, 40, 280, 390, 260};
+
+    @Test
+    public void toOriented_isIdentityWithoutOrientation() {
+        assertSame(POINTS, Utils.toOriented(POINTS, WIDTH, HEIGHT,
+                ExifInterface.ORIENTATION_NORMAL));
+        assertSame(POINTS, Utils.toOriented(POINTS, WIDTH, HEIGHT,
+                ExifInterface.ORIENTATION_UNDEFINED));
+        assertSame(POINTS, Utils.toRaw(POINTS, WIDTH, HEIGHT,
+                ExifInterface.ORIENTATION_NORMAL));
+    }
+
+    @Test
+    public void toOriented_staysInsideOrientedImage() {
+        for (int orientation = ExifInterface.ORIENTATION_NORMAL;
+             orientation <= ExifInterface.ORIENTATION_ROTATE_270; orientation++) {
+            final boolean transposed = Utils.isTransposed(orientation);
+            final int width = transposed ? HEIGHT : WIDTH;
+            final int height = transposed ? WIDTH : HEIGHT;
+            final float[] oriented = Utils.toOriented(POINTS, WIDTH, HEIGHT, orientation);
+            for (int i = 0; i < 8; i += 2) {
+                assertTrue(oriented[i] >= 0 && oriented[i] <= width - 1);
+                assertTrue(oriented[i + 1] >= 0 && oriented[i + 1] <= height - 1);
+            }
+        }
+    }
+
+    @Test
+    public void toOriented_relabelsCorners() {
+        for (int orientation = ExifInterface.ORIENTATION_NORMAL;
+             orientation <= ExifInterface.ORIENTATION_ROTATE_270; orientation++) {
+            final float[] oriented = Utils.toOriented(POINTS, WIDTH, HEIGHT, orientation);
+            // 摆正后仍为左上、右上、左下、右下
+            final String message = "orientation " + orientation;
+            assertTrue(message, oriented[0] < oriented[2]);
+            assertTrue(message, oriented[4] < oriented[6]);
+            assertTrue(message, oriented[1] < oriented[5]);
+            assertTrue(message, oriented[3] < oriented[7]);
+        }
+    }
+
+    @Test
+    public void toRaw_roundTripsAllOrientations() {
+        for (int orientation = ExifInterface.ORIENTATION_NORMAL;
+             orientation <= ExifInterface.ORIENTATION_ROTATE_270; orientation++) {
+            final float[] oriented = Utils.toOriented(POINTS, WIDTH, HEIGHT, orientation);
+            final float[] raw = Utils.toRaw(oriented, WIDTH, HEIGHT, orientation);
+            // 映射回原图后为原来的四个点，顺序为摆正后的顺序
+            final boolean[] used = new boolean[4];
+            for (int i = 0; i < 8; i += 2) {
+                int found = -1;
+                for (int j = 0; j < 4; j++) {
+                    if (!used[j] && Math.abs(raw[i] - POINTS[j * 2]) < DELTA
+                            && Math.abs(raw[i + 1] - POINTS[j * 2 + 1]) < DELTA) {
+                        found = j;
+                        break;
+                    }
+                }
+                assertTrue("orientation " + orientation, found >= 0);
+                used[found] = true;
+            }
+        }
+    }
+
+    @Test
+    public void toOriented_rotate90() {
+        final float[] oriented = Utils.toOriented(POINTS, WIDTH, HEIGHT,
+                ExifInterface.ORIENTATION_ROTATE_90);
+        // 顺时针旋转 90 度：原图左下角成为左上角，原图左上角成为右上角
+        assertArrayEquals(new float[]{
+                HEIGHT - 1 - 280, 40,
+                HEIGHT - 1 - 10, 20,
+                HEIGHT - 1 - 260, 390,
+                HEIGHT - 1 - 30, 370}, oriented, DELTA);
+    }
+
+    @Test
+    public void isTransposed() {
+        assertFalse(Utils.isTransposed(ExifInterface.ORIENTATION_NORMAL));
+        assertFalse(Utils.isTransposed(ExifInterface.ORIENTATION_FLIP_HORIZONTAL));
+        assertFalse(Utils.isTransposed(ExifInterface.ORIENTATION_ROTATE_180));
+        assertFalse(Utils.isTransposed(ExifInterface.ORIENTATION_FLIP_VERTICAL));
+        assertTrue(Utils.isTransposed(ExifInterface.ORIENTATION_TRANSPOSE));
+        assertTrue(Utils.isTransposed(ExifInterface.ORIENTATION_ROTATE_90));
+        assertTrue(Utils.isTransposed(ExifInterface.ORIENTATION_TRANSVERSE));
+        assertTrue(Utils.isTransposed(ExifInterface.ORIENTATION_ROTATE_270));
+    }
+
+    @Test
+    public void calculateSampleSize() {
+        assertEquals(1, Utils.calculateSampleSize(1000, 0));
+        assertEquals(1, Utils.calculateSampleSize(1000, 1000));
+        assertEquals(1, Utils.calculateSampleSize(1000, 501));
+        assertEquals(2, Utils.calculateSampleSize(1000, 500));
+        assertEquals(8, Utils.calculateSampleSize(4000, 500));
+        assertEquals(4, Utils.calculateSampleSize(4000, 501));
+        assertEquals(1, Utils.calculateSampleSize(100, 500));
+    }
+
+    @Test
+    public void calculateOutputSize_fromPoints() {
+        final float[] points = {0, 0, 200, 0, 0, 100, 200, 100};
+        assertArrayEquals(new int[]{200, 100},
+                Utils.calculateOutputSize(points, 0, 0, 0, 0, 0, 0));
+        // 设置的输出尺寸优先
+        assertArrayEquals(new int[]{64, 48},
+                Utils.calculateOutputSize(points, 64, 48, 50, 300, 210, 297));
+        // 超出最大尺寸时等比缩小
+        assertArrayEquals(new int[]{100, 50},
+                Utils.calculateOutputSize(points, 0, 0, 100, 0, 0, 0));
+        assertArrayEquals(new int[]{200, 100},
+                Utils.calculateOutputSize(points, 0, 0, 300, 0, 0, 0));
+    }
+
+    @Test
+    public void calculateOutputSize_fromDpi() {
+        // A4 300 DPI，纸张方向跟随边框方向
+        final float[] landscape = {0, 0, 200, 0, 0, 100, 200, 100};
+        assertArrayEquals(new int[]{3508, 2480},
+                Utils.calculateOutputSize(landscape, 0, 0, 0, 300, 210, 297));
+        final float[] portrait = {0, 0, 100, 0, 0, 200, 100, 200};
+        assertArrayEquals(new int[]{2480, 3508},
+                Utils.calculateOutputSize(portrait, 0, 0, 0, 300, 297, 210));
+        assertArrayEquals(new int[]{1000, 707},
+                Utils.calculateOutputSize(landscape, 0, 0, 1000, 300, 210, 297));
+    }
+}
@@ -25,6 +25,7 @@ import androidx.annotation.WorkerThread;
 import java.util.ArrayList;
 
 import io.github.alexmofer.documentskewcorrection.core.DocumentSkewCorrectionCore;
+import io.github.alexmofer.documentskewcorrection.core.DocumentSkewDetectionResult;
 import io.github.alexmofer.documentskewcorrection.hms.DocumentSkewCorrectionHMS;
 import io.github.alexmofer.documentskewcorrection.tensorflow.DocumentSkewCorrectionTensorflow;
 
@@ -38,6 +39,7 @@ public class DocumentSkewCorrectionFusion {
     public static final int PLAN_TENSORFLOW = 1;// Tensorflow 代理位图处理，识别与校正依然是OpenCV方案。
     public static final int PLAN_HMS = 2;// 带 HMS 设备的端侧能力，不是所有设备都支持。
     private static final ArrayList<Integer> PLANS = new ArrayList<>();
+    private static float sConfidenceThreshold = 0;
 
     static {
         PLANS.add(PLAN_HMS);
@@ -60,6 +62,69 @@ public class DocumentSkewCorrectionFusion {
         }
     }
 
+    /**
+     * 设置置信度阈值
+     * 检测时某方案结果的置信度达到阈值即返回，不再执行后续方案；
+     * 低于阈值（含未检测到）时继续执行后续方案，最终返回置信度最高的结果。
+     * HMS 方案不提供置信度，其检测到的结果视为置信度 1。
+     *
+     * @param threshold 置信度阈值，范围为 0 到 1，默认为 0，即与其他操作一致，仅在方案执行异常时才执行后续方案。
+     */
+    public static void setConfidenceThreshold(float threshold) {
+        sConfidenceThreshold = threshold;
+    }
+
+    @Nullable
+    private static DocumentSkewDetectionResult detectSequence(
+            ThrowableFunction<Integer, DocumentSkewDetectionResult> function) throws Exception {
+        final float threshold = sConfidenceThreshold;
+        final int count = PLANS.size();
+        DocumentSkewDetectionResult best = null;
+        for (int i = 0; i < count; i++) {
+            final int plan = PLANS.get(i);
+            final DocumentSkewDetectionResult result;
+            if (i == count - 1 && best == null) {
+                result = function.apply(plan);
+            } else {
+                try {
+                    result = function.apply(plan);
+                } catch (Throwable t) {
+                    // ignore
+                    continue;
+                }
+            }
+            if (threshold <= 0) {
+                return result;
+            }
+            if (result != null) {
+                if (result.getConfidence() >= threshold) {
+                    return result;
+                }
+                if (best == null || result.getConfidence() > best.getConfidence()) {
+                    best = result;
+                }
+            }
+        }
+        return best;
+    }
+
+    @Nullable
+    private static DocumentSkewDetectionResult wrap(ThrowableSupplier<float[]> supplier)
+            throws Exception {
+        final long start = System.nanoTime();
+        final float[] points = supplier.get();
+        if (points == null) {
+            return null;
+        }
+        return new DocumentSkewDetectionResult(points, 1,
+                DocumentSkewDetectionResult.PARAMETER_NONE, System.nanoTime() - start);
+    }
+
+    @Nullable
+    private static float[] getPoints(@Nullable DocumentSkewDetectionResult result) {
+        return result == null ? null : result.getPoints();
+    }
+
     @Nullable
     private static <T> T executeSequence(ThrowableFunction<Integer, T> function) throws Exception {
         final int count = PLANS.size();
@@ -80,15 +145,16 @@ public class DocumentSkewCorrectionFusion {
 
     @WorkerThread
     @Nullable
-    private static float[] detect(int plan, Context context, Bitmap image, float maxSize) throws Exception {
+    private static DocumentSkewDetectionResult detectResult(int plan, Context context,
+                                                            Bitmap image, float maxSize) throws Exception {
         if (plan == PLAN_CORE) {
-            return DocumentSkewCorrectionCore.detect(image, maxSize);
+            return DocumentSkewCorrectionCore.detectResult(image, maxSize);
         }
         if (plan == PLAN_TENSORFLOW) {
-            return DocumentSkewCorrectionTensorflow.detect(context, image);
+            return DocumentSkewCorrectionTensorflow.detectResult(context, image);
         }
         if (plan == PLAN_HMS) {
-            return DocumentSkewCorrectionHMS.detect(image, maxSize);
+            return wrap(() -> DocumentSkewCorrectionHMS.detect(image, maxSize));
         }
         throw new Exception("Not supported plan:" + plan);
     }
@@ -105,20 +171,37 @@ public class DocumentSkewCorrectionFusion {
     @WorkerThread
     @Nullable
     public static float[] detect(Context context, Bitmap image, float maxSize) throws Exception {
-        return executeSequence(plan -> detect(plan, context, image, maxSize));
+        return getPoints(detectResult(context, image, maxSize));
+    }
+
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @param context Context
+     * @param image   位图
+     *                注意：不同的方案对位图有不同要求。
+     * @param maxSize 最大尺寸
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Context context, Bitmap image,
+                                                           float maxSize) throws Exception {
+        return detectSequence(plan -> detectResult(plan, context, image, maxSize));
     }
 
     @WorkerThread
     @Nullable
-    private static float[] detect(int plan, Context context, Bitmap image) throws Exception {
+    private static DocumentSkewDetectionResult detectResult(int plan, Context context,
+                                                            Bitmap image) throws Exception {
         if (plan == PLAN_CORE) {
-            return DocumentSkewCorrectionCore.detect(image);
+            return DocumentSkewCorrectionCore.detectResult(image);
         }
         if (plan == PLAN_TENSORFLOW) {
-            return DocumentSkewCorrectionTensorflow.detect(context, image);
+            return DocumentSkewCorrectionTensorflow.detectResult(context, image);
         }
         if (plan == PLAN_HMS) {
-            return DocumentSkewCorrectionHMS.detect(image);
+            return wrap(() -> DocumentSkewCorrectionHMS.detect(image));
         }
         throw new Exception("Not supported plan:" + plan);
     }
@@ -134,20 +217,36 @@ public class DocumentSkewCorrectionFusion {
     @WorkerThread
     @Nullable
     public static float[] detect(Context context, Bitmap image) throws Exception {
-        return executeSequence(plan -> detect(plan, context, image));
+        return getPoints(detectResult(context, image));
     }
 
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @param context Context
+     * @param image   位图
+     *                注意：不同的方案对位图有不同要求。
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     */
     @WorkerThread
     @Nullable
-    private static float[] detect(int plan, Context context, Uri uri) throws Exception {
+    public static DocumentSkewDetectionResult detectResult(Context context, Bitmap image)
+            throws Exception {
+        return detectSequence(plan -> detectResult(plan, context, image));
+    }
+
+    @WorkerThread
+    @Nullable
+    private static DocumentSkewDetectionResult detectResult(int plan, Context context,
+                                                            Uri uri) throws Exception {
         if (plan == PLAN_CORE) {
-            return DocumentSkewCorrectionCore.detect(context, uri);
+            return DocumentSkewCorrectionCore.detectResult(context, uri);
         }
         if (plan == PLAN_TENSORFLOW) {
-            return DocumentSkewCorrectionTensorflow.detect(context, uri);
+            return DocumentSkewCorrectionTensorflow.detectResult(context, uri);
         }
         if (plan == PLAN_HMS) {
-            return DocumentSkewCorrectionHMS.detect(context, uri);
+            return wrap(() -> DocumentSkewCorrectionHMS.detect(context, uri));
         }
         throw new Exception("Not supported plan:" + plan);
     }
@@ -162,7 +261,21 @@ public class DocumentSkewCorrectionFusion {
     @WorkerThread
     @Nullable
     public static float[] detect(Context context, Uri uri) throws Exception {
-        return executeSequence(plan -> detect(plan, context, uri));
+        return getPoints(detectResult(context, uri));
+    }
+
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @param context Context
+     * @param uri     图片链接
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Context context, Uri uri)
+            throws Exception {
+        return detectSequence(plan -> detectResult(plan, context, uri));
     }
 
     @WorkerThread
@@ -229,4 +342,9 @@ public class DocumentSkewCorrectionFusion {
     interface ThrowableFunction<T, R> {
         R apply(T t) throws Exception;
     }
+
+    @FunctionalInterface
+    interface ThrowableSupplier<T> {
+        T get() throws Exception;
+    }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2025 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.alexmofer.documentskewcorrection.hms;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Uri 位图解码器
+ * 每张图片只打开一次内容：文件描述符可定位时，读取 EXIF 与尺寸后定位回开头直接解码；
+ * 不可定位时（如管道、云端内容提供者）以带标记的缓冲流读取文件头，读取 EXIF 与尺寸后回到标记处继续解码，
+ * 仅当文件头超出标记范围时才重新打开一次。
+ * 为 documentskewcorrection-core 模块中同名类的精简版本，只保留整图解码，不含区域解码。
+ * Created by Alex on 2025/6/9.
+ */
+final class UriBitmapDecoder {
+
+    private static final int HEADER_LIMIT = 256 * 1024;// 文件头缓冲上限，JPEG 的 EXIF 段不超过 64K
+    private final Context mContext;
+    private final Uri mUri;
+
+    UriBitmapDecoder(Context context, @NonNull Uri uri) {
+        mContext = context;
+        mUri = uri;
+    }
+
+    /**
+     * 解码
+     *
+     * @param mutable       是否可修改
+     * @param config        格式
+     * @param premultiplied 是否预乘，未预乘的位图不可用于显示
+     * @param calculator    采样率计算器，为空时按原尺寸解码
+     * @return 解码结果
+     * @throws Exception 解码失败
+     */
+    Result decode(boolean mutable, Bitmap.Config config, boolean premultiplied,
+                  @Nullable SampleSizeCalculator calculator) throws Exception {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = mutable;
+        options.inPreferredConfig = config;
+        options.inPremultiplied = premultiplied;
+        try (final AssetFileDescriptor afd = open()) {
+            final FileDescriptor fd = afd.getFileDescriptor();
+            if (afd.getStartOffset() == 0 && isSeekable(fd)) {
+                return decodeDescriptor(fd, options, calculator);
+            }
+            return decodeStream(afd, options, calculator);
+        }
+    }
+
+    private AssetFileDescriptor open() throws Exception {
+        final AssetFileDescriptor afd =
+                mContext.getContentResolver().openAssetFileDescriptor(mUri, "r");
+        if (afd == null) {
+            throw new Exception("Cannot open uri.");
+        }
+        return afd;
+    }
+
+    private static boolean isSeekable(FileDescriptor fd) {
+        try {
+            Os.lseek(fd, 0, OsConstants.SEEK_SET);
+            return true;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    private Result decodeDescriptor(FileDescriptor fd, BitmapFactory.Options options,
+                                    @Nullable SampleSizeCalculator calculator) throws Exception {
+        final int orientation = new ExifInterface(fd).getAttributeInt(
+                ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        Os.lseek(fd, 0, OsConstants.SEEK_SET);
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFileDescriptor(fd, null, options);
+        options.inJustDecodeBounds = false;
+        checkBounds(options, calculator);
+        Os.lseek(fd, 0, OsConstants.SEEK_SET);
+        final Bitmap bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+        if (bitmap == null) {
+            throw new Exception("Cannot get bitmap from uri.");
+        }
+        return new Result(bitmap, orientation);
+    }
+
+    private Result decodeStream(AssetFileDescriptor afd, BitmapFactory.Options options,
+                                @Nullable SampleSizeCalculator calculator) throws Exception {
+        InputStream input = new BufferedInputStream(afd.createInputStream(), HEADER_LIMIT);
+        try {
+            input.mark(HEADER_LIMIT);
+            final int orientation = new ExifInterface(input).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            input = rewind(input);
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(input, null, options);
+            options.inJustDecodeBounds = false;
+            checkBounds(options, calculator);
+            input = rewind(input);
+            final Bitmap bitmap = BitmapFactory.decodeStream(input, null, options);
+            if (bitmap == null) {
+                throw new Exception("Cannot get bitmap from uri.");
+            }
+            return new Result(bitmap, orientation);
+        } finally {
+            input.close();
+        }
+    }
+
+    private InputStream rewind(InputStream input) throws Exception {
+        try {
+            input.reset();
+            input.mark(HEADER_LIMIT);
+            return input;
+        } catch (IOException e) {
+            // 文件头超出缓冲范围，重新打开
+            input.close();
+            final InputStream reopened = new BufferedInputStream(open().createInputStream(),
+                    HEADER_LIMIT);
+            reopened.mark(HEADER_LIMIT);
+            return reopened;
+        }
+    }
+
+    private static void checkBounds(BitmapFactory.Options options,
+                                    @Nullable SampleSizeCalculator calculator) throws Exception {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new Exception("Not a bitmap uri.");
+        }
+        if (calculator != null) {
+            // 解码时直接缩小到接近所需尺寸
+            options.inSampleSize = Math.max(1,
+                    calculator.calculate(options.outWidth, options.outHeight));
+        }
+    }
+
+    /**
+     * 采样率计算器
+     */
+    interface SampleSizeCalculator {
+
+        /**
+         * 计算采样率
+         *
+         * @param width  原图宽
+         * @param height 原图高
+         * @return 采样率
+         */
+        int calculate(int width, int height);
+    }
+
+    /**
+     * 解码结果
+     */
+    static final class Result {
+        private final Bitmap mBitmap;
+        private final int mOrientation;
+
+        Result(Bitmap bitmap, int orientation) {
+            mBitmap = bitmap;
+            mOrientation = orientation;
+        }
+
+        /**
+         * 获取位图
+         *
+         * @return 未处理 EXIF 方向的位图
+         */
+        Bitmap getBitmap() {
+            return mBitmap;
+        }
+
+        /**
+         * 获取 EXIF 方向
+         *
+         * @return EXIF 方向
+         */
+        int getOrientation() {
+            return mOrientation;
+        }
+    }
+}
@@ -59,17 +59,6 @@ final class Utils {
         }
     }
 
-    private static int getExifOrientation(Context context, @NonNull Uri uri) throws Exception {
-        try (final InputStream input = context.getContentResolver().openInputStream(uri)) {
-            if (input == null) {
-                throw new Exception("Cannot open uri.");
-            }
-            final ExifInterface exif = new ExifInterface(input);
-            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
-                    ExifInterface.ORIENTATION_NORMAL);
-        }
-    }
-
     /**
      * 从 Uri 获取位图
      *
@@ -82,90 +71,77 @@ final class Utils {
      */
     public static Bitmap fromUri(Context context, @NonNull Uri uri,
                                  boolean mutable, Bitmap.Config config, boolean premultiplied) throws Exception {
-        if (!isBitmap(context, uri)) {
-            throw new Exception("Not a bitmap uri.");
+        final UriBitmapDecoder.Result result = new UriBitmapDecoder(context, uri)
+                .decode(mutable, config, premultiplied, null);
+        final Bitmap original = result.getBitmap();
+        final int orientation = result.getOrientation();
+        // 处理 EXIF ORIENTATION
+        if (orientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL) {
+            // 水平翻转
+            final Matrix matrix = new Matrix();
+            matrix.setScale(-1, 1);
+            final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
+                    original.getWidth(), original.getHeight(), matrix, true);
+            original.recycle();
+            return handled;
         }
-        final int orientation = getExifOrientation(context, uri);
-        try (final InputStream input = context.getContentResolver().openInputStream(uri)) {
-            if (input == null) {
-                throw new Exception("Cannot get bitmap from uri.");
-            }
-            final BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inMutable = mutable;
-            options.inPreferredConfig = config;
-            options.inPremultiplied = premultiplied;
-            final Bitmap original = BitmapFactory.decodeStream(input, null, options);
-            if (original == null) {
-                throw new Exception("Cannot get bitmap from uri.");
-            }
-            // 处理 EXIF ORIENTATION
-            if (orientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL) {
-                // 水平翻转
-                final Matrix matrix = new Matrix();
-                matrix.setScale(-1, 1);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_ROTATE_180) {
-                // 180度旋转
-                final Matrix matrix = new Matrix();
-                matrix.setRotate(180);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_FLIP_VERTICAL) {
-                // 垂直翻转
-                final Matrix matrix = new Matrix();
-                matrix.setScale(1, -1);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_TRANSPOSE) {
-                // 垂直翻转再旋转90度
-                final Matrix matrix = new Matrix();
-                matrix.setScale(1, -1);
-                matrix.postRotate(90);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_ROTATE_90) {
-                // 旋转90度
-                final Matrix matrix = new Matrix();
-                matrix.setRotate(90);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_TRANSVERSE) {
-                // 旋转90度再垂直翻转
-                final Matrix matrix = new Matrix();
-                matrix.setRotate(90);
-                matrix.postScale(1, -1);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            if (orientation == ExifInterface.ORIENTATION_ROTATE_270) {
-                // 旋转270度
-                final Matrix matrix = new Matrix();
-                matrix.setRotate(270);
-                final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
-                        original.getWidth(), original.getHeight(), matrix, true);
-                original.recycle();
-                return handled;
-            }
-            // 无需处理
-            return original;
+        if (orientation == ExifInterface.ORIENTATION_ROTATE_180) {
+            // 180度旋转
+            final Matrix matrix = new Matrix();
+            matrix.setRotate(180);
+            final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
+                    original.getWidth(), original.getHeight(), matrix, true);
+            original.recycle();
+            return handled;
+        }
+        if (orientation == ExifInterface.ORIENTATION_FLIP_VERTICAL) {
+            // 垂直翻转
+            final Matrix matrix = new Matrix();
+            matrix.setScale(1, -1);
+            final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
+                    original.getWidth(), original.getHeight(), matrix, true);
+            original.recycle();
+            return handled;
+        }
+        if (orientation == ExifInterface.ORIENTATION_TRANSPOSE) {
+            // 垂直翻转再旋转90度
+            final Matrix matrix = new Matrix();
+            matrix.setScale(1, -1);
+            matrix.postRotate(90);
+            final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
+                    original.getWidth(), original.getHeight(), matrix, true);
+            original.recycle();
+            return handled;
+        }
+        if (orientation == ExifInterface.ORIENTATION_ROTATE_90) {
+            // 旋转90度
+            final Matrix matrix = new Matrix();
+            matrix.setRotate(90);
+            final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
+                    original.getWidth(), original.getHeight(), matrix, true);
+            original.recycle();
+            return handled;
+        }
+        if (orientation == ExifInterface.ORIENTATION_TRANSVERSE) {
+            // 旋转90度再垂直翻转
+            final Matrix matrix = new Matrix();
+            matrix.setRotate(90);
+            matrix.postScale(1, -1);
+            final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
+                    original.getWidth(), original.getHeight(), matrix, true);
+            original.recycle();
+            return handled;
+        }
+        if (orientation == ExifInterface.ORIENTATION_ROTATE_270) {
+            // 旋转270度
+            final Matrix matrix = new Matrix();
+            matrix.setRotate(270);
+            final Bitmap handled = Bitmap.createBitmap(original, 0, 0,
+                    original.getWidth(), original.getHeight(), matrix, true);
+            original.recycle();
+            return handled;
         }
+        // 无需处理
+        return original;
     }
 }
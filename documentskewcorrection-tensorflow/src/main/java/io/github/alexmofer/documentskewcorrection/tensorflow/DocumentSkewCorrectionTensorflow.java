@@ -23,6 +23,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import io.github.alexmofer.documentskewcorrection.core.DocumentSkewCorrectionCore;
+import io.github.alexmofer.documentskewcorrection.core.DocumentSkewDetectionResult;
 import io.github.alexmofer.documentskewcorrection.core.DocumentSkewDetector;
 
 /**
@@ -37,25 +38,16 @@ public class DocumentSkewCorrectionTensorflow {
 
     @WorkerThread
     @Nullable
-    private static float[] detect(DocumentSkewDetector detector) {
+    private static DocumentSkewDetectionResult detectResult(DocumentSkewDetector detector) {
         final int width = detector.getWidth();
         final int height = detector.getHeight();
-        final int[] points = detector.detect();
+        final DocumentSkewDetectionResult result = detector.detectResult();
         detector.release();
-        if (points == null) {
+        if (result == null) {
             // 识别结束，未检测到文档
             return null;
         }
-        final float[] ps = new float[8];
-        ps[0] = points[0] * 1f / width;
-        ps[1] = points[1] * 1f / height;
-        ps[2] = points[2] * 1f / width;
-        ps[3] = points[3] * 1f / height;
-        ps[4] = points[4] * 1f / width;
-        ps[5] = points[5] * 1f / height;
-        ps[6] = points[6] * 1f / width;
-        ps[7] = points[7] * 1f / height;
-        return ps;
+        return result.scale(1f / width, 1f / height);
     }
 
     /**
@@ -68,9 +60,8 @@ public class DocumentSkewCorrectionTensorflow {
     @WorkerThread
     @Nullable
     public static float[] detect(Context context, Bitmap image) throws Exception {
-        return detect(new DocumentSkewDetectorTensorflowBuilder(context)
-                .setImage(image, false)
-                .build());
+        final DocumentSkewDetectionResult result = detectResult(context, image);
+        return result == null ? null : result.getPoints();
     }
 
     /**
@@ -83,7 +74,38 @@ public class DocumentSkewCorrectionTensorflow {
     @WorkerThread
     @Nullable
     public static float[] detect(Context context, Uri uri) throws Exception {
-        return detect(new DocumentSkewDetectorTensorflowBuilder(context)
+        final DocumentSkewDetectionResult result = detectResult(context, uri);
+        return result == null ? null : result.getPoints();
+    }
+
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @param context Context
+     * @param image   位图
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Context context, Bitmap image)
+            throws Exception {
+        return detectResult(new DocumentSkewDetectorTensorflowBuilder(context)
+                .setImage(image, false)
+                .build());
+    }
+
+    /**
+     * 检测（附带置信度等信息）
+     *
+     * @param context Context
+     * @param uri     图片链接
+     * @return 检测结果，边框已按位图宽高归一化，返回空表示未检测到文档边框
+     */
+    @WorkerThread
+    @Nullable
+    public static DocumentSkewDetectionResult detectResult(Context context, Uri uri)
+            throws Exception {
+        return detectResult(new DocumentSkewDetectorTensorflowBuilder(context)
                 .setImage(context, uri)
                 .build());
     }
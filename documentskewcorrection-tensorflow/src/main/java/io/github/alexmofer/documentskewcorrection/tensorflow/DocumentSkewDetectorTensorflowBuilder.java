@@ -95,6 +95,12 @@ public class DocumentSkewDetectorTensorflowBuilder extends DocumentSkewDetectorD
         return this;
     }
 
+    @Override
+    protected int getSampleSize(int width, int height) {
+        // 模型输入为 256*256，解码到最短边不小于 256 即可
+        return calculateSampleSize(Math.min(width, height), 256);
+    }
+
     @Override
     public DocumentSkewDetectorDelegated build() throws Exception {
         if (mImage == null) {
@@ -133,21 +139,15 @@ public class DocumentSkewDetectorTensorflowBuilder extends DocumentSkewDetectorD
             output.clear();
             // 处理
             mInterpreter.run(input, output);
-            // 读取输出，并进行二值化
+            // 读取输出，并进行二值化，直接写入直接缓冲区，无需复制或固定数组
             output.rewind();
-            final byte[] ps = new byte[width * height];
-            for (int i = 0; i < ps.length; i++) {
-                if (output.getFloat() > 0.2) {
-                    ps[i] = (byte) 255;
-                } else {
-                    ps[i] = 0;
-                }
+            final ByteBuffer ps = obtainBuffer(width, height);
+            final int count = width * height;
+            for (int i = 0; i < count; i++) {
+                ps.put(output.getFloat() > 0.2 ? (byte) 255 : 0);
             }
             mWidth = width;
             mHeight = height;
-            mPixels = ps;
-            // 主动调用一下gc
-            System.gc();
         } finally {
             if (mRecycleImage) {
                 mImage.recycle();